@@ -1,6 +1,6 @@
 package example.dlant;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,7 +10,9 @@ public class AntMessage {
     private double pheromoneLevel;
     private int ttl;
     private int hitCount;
-    private List<Integer> path; 
+    // Node indexes visited, in order, in the first pathSize slots
+    private int[] path;
+    private int pathSize;
 
     public AntMessage(int source, int content, double initialPheromone, int ttl) {
         this.source = source;
@@ -18,7 +20,8 @@ public class AntMessage {
         this.pheromoneLevel = initialPheromone;
         this.ttl = ttl;
         this.hitCount = 0;
-        this.path = new ArrayList<Integer>();
+        this.path = new int[8];
+        this.pathSize = 0;
     }
 
     // Getter for source
@@ -64,11 +67,34 @@ public class AntMessage {
 
     // Method for path (formerly routeHistory)
     public void addToPath(int nodeId) {
-        path.add(nodeId);
+        if (pathSize == path.length) {
+            path = Arrays.copyOf(path, 2 * path.length);
+        }
+        path[pathSize++] = nodeId;
     }
 
+    // Copy of the path, allocates: not for per-event use
     public List<Integer> getPath() {
-        return new LinkedList<>(path);
+        List<Integer> copy = new LinkedList<>();
+        for (int i = 0; i < pathSize; i++) {
+            copy.add(path[i]);
+        }
+        return copy;
+    }
+
+    // Whether the ant already visited the node with this index, without copying
+    public boolean inPath(int index) {
+        for (int i = 0; i < pathSize; i++) {
+            if (path[i] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Index of the node before the last one on the path, -1 if there is none
+    public int getPreviousIndex() {
+        return pathSize < 2 ? -1 : path[pathSize - 2];
     }
 
     // Define the isHit method
@@ -78,10 +104,10 @@ public class AntMessage {
 
     // Define the getPreviousNodeIndex method
     public Integer getPreviousNodeIndex() {
-        if (path.isEmpty()) {
+        if (pathSize == 0) {
             return null;
         } else {
-            return path.get(path.size() - 1);
+            return path[pathSize - 1];
         }
     }
 
@@ -89,7 +115,8 @@ public class AntMessage {
     public AntMessage replicateForForwarding() {
         AntMessage replicatedAnt = new AntMessage(this.source, this.content, this.pheromoneLevel, this.ttl - 1);
         replicatedAnt.hitCount = this.hitCount;
-        replicatedAnt.path = new ArrayList<>(path);// Deep copy of path
+        replicatedAnt.path = Arrays.copyOf(path, path.length);// Deep copy of path
+        replicatedAnt.pathSize = this.pathSize;
         return replicatedAnt;
     }
 
@@ -101,7 +128,7 @@ public class AntMessage {
                 ", pheromoneLevel=" + pheromoneLevel +
                 ", ttl=" + ttl +
                 ", hitCount=" + hitCount +
-                ", path=" + path +
+                ", path=" + Arrays.toString(Arrays.copyOf(path, pathSize)) +
                 '}';
     }
 }
@@ -1,19 +1,20 @@
 package example.dlant;
 import peersim.core.Node;
 
-import java.util.Random;
-
 import peersim.config.Configuration;
 import peersim.core.Control;
+import peersim.core.Log;
 import peersim.core.Network;
 import peersim.core.CommonState; // Import CommonState
 
 public class DLAntControl implements Control {
 
     private final int pid;
+    private final Log log;
 
     public DLAntControl(String prefix) {
         pid = Configuration.getPid(prefix + ".protocol");
+        log = Log.get(prefix);
     }
 
     
@@ -28,10 +29,10 @@ public class DLAntControl implements Control {
         int startIndex = CommonState.r.nextInt(size);
         Node startNode = Network.get(startIndex);
 
-        System.out.println("Starting search from node " + startNode.getIndex());
+        if (log.isInfo()) log.info("Starting search from node " + startNode.getIndex());
 
         DLAntProtocol protocol = (DLAntProtocol) startNode.getProtocol(pid);
-        protocol.startAntSearch(startNode, new Random().nextInt( Network.size()), pid); 
+        protocol.startAntSearch(startNode, CommonState.r.nextInt(Network.size()), pid); 
 
         return false;
     }
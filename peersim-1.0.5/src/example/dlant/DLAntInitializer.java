@@ -1,8 +1,7 @@
 package example.dlant;
 
-import java.util.Random;
-
 import peersim.config.Configuration;
+import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
 
@@ -43,10 +42,10 @@ public class DLAntInitializer implements Control {
         for (int i = 0; i < Network.size(); i++) {
             DLAntProtocol prot = (DLAntProtocol) Network.get(i).getProtocol(pid);
 
-            int resourceAmount = new Random().nextInt(5);
+            int resourceAmount = CommonState.r.nextInt(5);
 
             for (int j = 0; j < resourceAmount; j++) {
-                int value = new Random().nextInt(Network.size() + 1);
+                int value = CommonState.r.nextInt(Network.size() + 1);
 
                 prot.addResource(value);
             }
@@ -1,8 +1,12 @@
 package example.dlant;
 
+import iat.resource.ResourceHolder;
+import iat.resource.ResourceStore;
 import peersim.config.Configuration;
 import peersim.config.FastConfig;
+import peersim.core.CommonState;
 import peersim.core.Linkable;
+import peersim.core.Log;
 import peersim.core.Network;
 import peersim.core.Node;
 import peersim.edsim.EDProtocol;
@@ -11,12 +15,9 @@ import peersim.transport.Transport;
 import peersim.vector.SingleValueHolder;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.IntStream;
+import java.util.Arrays;
 
-public class DLAntProtocol implements EDProtocol {
+public class DLAntProtocol implements EDProtocol, ResourceHolder {
 
     // Constants
     private static final String PAR_TRANSPORT = ".transport";
@@ -26,12 +27,16 @@ public class DLAntProtocol implements EDProtocol {
 
     // Pheromone-related parameters
     private final double alpha; // Importance of the pheromone trail
-    private final double evaporation; // Rate of pheromone evaporation
+    private final double evaporation; // Rate of pheromone evaporation per time unit
     private final int transportPid; // Transport layer ID
     private final int linkablePid; // Linkable layer ID
-    private final Map<Integer, Double> pheromoneLevels; // Pheromone levels to neighbors
+    private final int initialTTL; // TTL of new ants, read once
+    private final Log log; // Shared by all clones
+    // Parallel to the Linkable neighbor list: slot i belongs to getNeighbor(i)
+    private double[] pheromoneLevels; // Pheromone levels to neighbors
+    private long[] pheromoneTimes; // Time each level was last decayed, -1 if never reinforced
     
-    protected List<Integer> resources;
+    protected ResourceStore resources;
 
     // Constructor that initializes the protocol's parameters
     public DLAntProtocol(String prefix) {
@@ -39,9 +44,13 @@ public class DLAntProtocol implements EDProtocol {
         this.linkablePid = Configuration.getPid(prefix + PAR_LINKABLE);
         this.alpha = Configuration.getDouble(prefix + PAR_ALPHA, 1.0);
         this.evaporation = Configuration.getDouble(prefix + PAR_EVAPORATION, 0.1);
-        this.pheromoneLevels = new HashMap<>();
+        this.initialTTL = Configuration.getInt("simulation.initialTTL", 2);
+        this.log = Log.get(prefix);
+        this.pheromoneLevels = new double[0];
+        this.pheromoneTimes = new long[0];
 
-        this.resources = new ArrayList<>();
+        // DLAntInitializer adds up to 4 resources out of [0, network size]
+        this.resources = ResourceStore.create(Network.size() + 1, 4);
     }
 
     public void addResource(int resource) {
@@ -52,12 +61,21 @@ public class DLAntProtocol implements EDProtocol {
         return resources.contains(resource);
     }
 
+    @Override
+    public ResourceStore getResourceStore() {
+        return resources;
+    }
+
     public ArrayList<Integer> getResources() {
-        return new ArrayList<>(resources);
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int resource : resources.toArray()) {
+            result.add(resource);
+        }
+        return result;
     }
 
     public void startAntSearch(Node startNode, int objectToSearch, int pid) {
-        AntMessage msg = new AntMessage(startNode.getIndex(), objectToSearch, alpha, calculateInitialTTL());
+        AntMessage msg = new AntMessage(startNode.getIndex(), objectToSearch, alpha, initialTTL);
 
         EDSimulator.add(0, msg, startNode, pid);
     }
@@ -67,7 +85,7 @@ public class DLAntProtocol implements EDProtocol {
         if (event instanceof AntMessage) {
             AntMessage msg = (AntMessage) event;
 
-            if (msg.getPath().contains(node.getIndex())) {
+            if (msg.inPath(node.getIndex())) {
                 return;
             }
 
@@ -78,10 +96,7 @@ public class DLAntProtocol implements EDProtocol {
                 msg.incrementHitCount();
             }
 
-            // Pheromone evaporation
-            pheromoneLevels.forEach((key, value) -> pheromoneLevels.put(key, value * (1 - evaporation)));     
-            
-            System.out.println(msg);
+            if (log.isDebug()) log.debug(msg.toString());
             
             // Update pheromone levels upon successful discovery
             if (msg.isHit()) {
@@ -97,38 +112,83 @@ public class DLAntProtocol implements EDProtocol {
 
     private void forwardAnt(AntMessage msg, Node currentNode, int pid) {
         Linkable linkable = (Linkable) currentNode.getProtocol(linkablePid);
+        ensureSlots(linkable.degree());
 
-        if (linkable.degree() > 0) {
-            IntStream.range(0, linkable.degree()).forEach(i -> {
-                Node neighbor = linkable.getNeighbor(i);
-                double pheromoneLevel = pheromoneLevels.getOrDefault(neighbor.getIndex(), 1.0);
+        for (int i = 0; i < linkable.degree(); i++) {
+            Node neighbor = linkable.getNeighbor(i);
+            double pheromoneLevel = getPheromoneLevel(i);
 
-                System.out.println(neighbor.getIndex() + " " + pheromoneLevels);
-                if (pheromoneLevel >= alpha) {
-                    Transport transport = (Transport) currentNode.getProtocol(transportPid);
+            if (log.isTrace()) log.trace(neighbor.getIndex() + " " + pheromoneLevel);
+            if (pheromoneLevel >= alpha) {
+                Transport transport = (Transport) currentNode.getProtocol(transportPid);
 
-                    transport.send(currentNode, neighbor, msg.replicateForForwarding(), pid);
-                }
-            });
+                transport.send(currentNode, neighbor, msg.replicateForForwarding(), pid);
+            }
         }
     }
 
     private void updatePheromones(AntMessage msg, Node currentNode) {
-        Integer previousNodeIndex = msg.getPreviousNodeIndex();
+        // The node the ant came from, the last path entry is currentNode
+        int previousNodeIndex = msg.getPreviousIndex();
+        if (previousNodeIndex < 0) {
+            return;
+        }
 
-        if (previousNodeIndex != null) {
-            Node previousNode = Network.get(previousNodeIndex); // Convert index to Node
-            pheromoneLevels.merge(previousNode.getIndex(), alpha, (oldValue, newValue) -> oldValue + newValue);
+        Linkable linkable = (Linkable) currentNode.getProtocol(linkablePid);
+        ensureSlots(linkable.degree());
+
+        for (int i = 0; i < linkable.degree(); i++) {
+            if (linkable.getNeighbor(i).getIndex() == previousNodeIndex) {
+                if (pheromoneTimes[i] < 0) {
+                    pheromoneLevels[i] = alpha;
+                    pheromoneTimes[i] = CommonState.getTime();
+                } else {
+                    pheromoneLevels[i] = getPheromoneLevel(i) + alpha;
+                }
+                return;
+            }
+        }
+    }
 
+    /**
+     * Pheromone level towards the neighbor in slot i, 1.0 if never
+     * reinforced. Levels evaporate as exp(-evaporation * dt) since their
+     * last update, applied lazily here, so idle edges cost nothing.
+     */
+    private double getPheromoneLevel(int i) {
+        long last = pheromoneTimes[i];
+        long now = CommonState.getTime();
+        if (last >= 0 && now > last) {
+            pheromoneLevels[i] *= Math.exp(-evaporation * (now - last));
+            pheromoneTimes[i] = now;
         }
+        return pheromoneLevels[i];
     }
 
-    private int calculateInitialTTL() {
-        return Configuration.getInt("simulation.initialTTL", 2);
+    /** Grows the tables to cover degree neighbor slots */
+    private void ensureSlots(int degree) {
+        int old = pheromoneLevels.length;
+        if (degree <= old) {
+            return;
+        }
+        pheromoneLevels = Arrays.copyOf(pheromoneLevels, degree);
+        pheromoneTimes = Arrays.copyOf(pheromoneTimes, degree);
+        Arrays.fill(pheromoneLevels, old, degree, 1.0);
+        Arrays.fill(pheromoneTimes, old, degree, -1L);
     }
 
+    /**
+     * Copies the prototype without touching Configuration: parameters are
+     * shared, tables and resources start empty.
+     */
     @Override
     public Object clone() {
-        return new DLAntProtocol("protocol.dlant");
+        DLAntProtocol dp;
+        try { dp = (DLAntProtocol) super.clone(); }
+        catch (CloneNotSupportedException e) { throw new InternalError(e.toString()); }
+        dp.pheromoneLevels = new double[0];
+        dp.pheromoneTimes = new long[0];
+        dp.resources = resources.clone();
+        return dp;
     }
 }
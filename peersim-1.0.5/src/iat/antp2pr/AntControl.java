@@ -1,7 +1,5 @@
 package iat.antp2pr;
 
-import java.util.Random;
-
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Control;
@@ -16,8 +14,6 @@ public class AntControl implements Control {
     // ID of FloodingProtocol
     private final int pid;
 
-    Random random = new Random();
-    
     // Constructor
     public AntControl(String prefix) {
         // No FastConfig here
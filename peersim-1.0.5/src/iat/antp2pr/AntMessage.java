@@ -1,26 +1,46 @@
 package iat.antp2pr;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
+import peersim.core.Network;
 import peersim.core.Node;
 
+/**
+ * Query ant of AntP2PR. The path is kept as node indices in an int[]
+ * that replicas share copy-on-write: replicating is O(1), the first
+ * replica to extend the shared path appends in place and the others
+ * copy the prefix only when they actually extend it. A 64-bit bloom
+ * filter over the path makes loop checks O(1) in the common case.
+ * Node indices are only stable while no node is removed from Network.
+ */
 public class AntMessage {
+    private static final int INITIAL_PATH_CAPACITY = 8;
+
+    // Next query ID to hand out, IDs are dense from 0 (see AntStats)
+    private static int nextQueryId = 0;
+
+    private final int queryId; // shared by all replicas of a query
+
     private final Node source;
     private final Node destination;
     private int content;
     private int ttl;
     private int hitCount; // if hitCount > 1, success
-    private List<Node> path; 
+
+    private PathBuffer path; // possibly shared with replicas
+    private int pathLen; // this ant's path is path.nodes[0..pathLen)
+    private long pathBloom; // bloom filter over path indices
 
     public AntMessage(Node source, Node destination, int content, int ttl) {
         this.source = source;
         this.destination = destination;
+        this.queryId = nextQueryId++;
         this.content = content;
         this.ttl = ttl;
         this.hitCount = 0;
-        this.path = new ArrayList<Node>();
+        this.path = new PathBuffer(INITIAL_PATH_CAPACITY);
+        this.pathLen = 0;
+        this.pathBloom = 0L;
     }
 
     // ----------------------------------------------------------
@@ -36,6 +56,20 @@ public class AntMessage {
         return destination;
     }
 
+    // ----------------------------------------------------------
+    // Query ID
+    // ----------------------------------------------------------
+
+    // Getter for query ID, the same for the original ant and its replicas
+    public int getQueryId() {
+        return queryId;
+    }
+
+    // ID the next query will get
+    static int peekNextQueryId() {
+        return nextQueryId;
+    }
+
     // ----------------------------------------------------------
     // Message Content
     // ----------------------------------------------------------
@@ -84,35 +118,85 @@ public class AntMessage {
     // ----------------------------------------------------------
 
     public void addToPath(Node node) {
-        path.add(node);
+        int index = node.getIndex();
+
+        // Append in place if nobody has extended the shared buffer past us yet,
+        // otherwise take a private copy of our prefix
+        if (path.used != pathLen || pathLen == path.nodes.length) {
+            PathBuffer copy = new PathBuffer(Math.max(2 * pathLen, INITIAL_PATH_CAPACITY));
+            System.arraycopy(path.nodes, 0, copy.nodes, 0, pathLen);
+            copy.used = pathLen;
+            path = copy;
+        }
+        path.nodes[pathLen++] = index;
+        path.used = pathLen;
+        pathBloom |= bloomBits(index);
+    }
+    // Number of nodes traveled so far
+    public int getPathSize() {
+        return pathLen;
+    }
+    // Network index of the i-th node traveled
+    public int getPathIndex(int i) {
+        return path.nodes[i];
     }
-    public List<Node> getPath() {
-        return new LinkedList<>(path);
+    // i-th node traveled
+    public Node getPathNode(int i) {
+        return Network.get(path.nodes[i]);
+    }
+    // Network index of the last node traveled, -1 if none
+    public int getLastIndex() {
+        return pathLen > 0 ? path.nodes[pathLen - 1] : -1;
     }
 
     public boolean inPath(Node node) {
-        return path.contains(node);
+        int index = node.getIndex();
+        long bits = bloomBits(index);
+
+        if ((pathBloom & bits) != bits) { return false; } // definitely not in path
+
+        // Possible false positive, confirm
+        for (int i = 0; i < pathLen; i++) {
+            if (path.nodes[i] == index) { return true; }
+        }
+        return false;
+    }
+
+    // Two bits of a 64-bit filter per index (Fibonacci hashing)
+    private static long bloomBits(int index) {
+        long h = index * 0x9E3779B97F4A7C15L;
+        return (1L << (h >>> 58)) | (1L << ((h >>> 52) & 63));
     }
 
     // ----------------------------------------------------------
     // Other
     // ----------------------------------------------------------
 
-    // Method to replicate this ant for sending to another node, with deep copy of path
+    // Method to replicate this ant for sending to another node, path is shared copy-on-write
     public AntMessage replicateForForwarding() {
-        AntMessage replicatedAnt = new AntMessage(this.source, this.destination, this.content, this.ttl);
-        replicatedAnt.hitCount = this.hitCount;
-        replicatedAnt.path = new ArrayList<>(path);// Deep copy of path
-
+        AntMessage replicatedAnt = new AntMessage(this);
         return replicatedAnt;
     }
 
+    // Copy constructor used for replication
+    private AntMessage(AntMessage other) {
+        this.source = other.source;
+        this.destination = other.destination;
+        this.queryId = other.queryId;
+        this.content = other.content;
+        this.ttl = other.ttl;
+        this.hitCount = other.hitCount;
+        this.path = other.path;
+        this.pathLen = other.pathLen;
+        this.pathBloom = other.pathBloom;
+    }
+
     @Override
     public String toString() {
-        ArrayList<Long> pathIDs = new ArrayList<>();
+        long[] pathIDs = new long[pathLen];
 
-        for (Node node : path) {
-            pathIDs.add(node.getID());
+        for (int i = 0; i < pathLen; i++) {
+            pathIDs[i] = getPathNode(i).getID();
         }
 
         return "AntMessage{" +
@@ -120,7 +204,17 @@ public class AntMessage {
                 ", content='" + content + '\'' +
                 ", ttl=" + ttl +
                 ", hitCount=" + hitCount +
-                ", path=" + pathIDs +
+                ", path=" + Arrays.toString(pathIDs) +
                 '}';
     }
+
+    /** Path storage shared by an ant and its replicas */
+    private static class PathBuffer {
+        final int[] nodes;
+        int used; // longest prefix any sharer has written
+
+        PathBuffer(int capacity) {
+            nodes = new int[capacity];
+        }
+    }
 }
@@ -1,16 +1,15 @@
 package iat.antp2pr;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.util.List;
-
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
 import peersim.core.Linkable;
+import peersim.core.Log;
 import peersim.core.Node;
 import peersim.core.Protocol;
 import peersim.edsim.EDProtocol;
 import peersim.transport.Transport;
+import peersim.util.SeenCache;
 
 /**
  * This protocol handles query routing in AntP2PR. 
@@ -19,16 +18,79 @@ import peersim.transport.Transport;
 public class AntProtocol implements EDProtocol {
     private static final String PAR_LINKABLE = "linkable";
     private static final String PAR_TRANSPORT = "transport";
+    private static final String PAR_DEDUP = "dedup"; // optional, seen-query cache capacity, default 0 (off)
+    private static final String PAR_DEDUP_WINDOW = "dedup.window"; // optional, default unbounded
+    private static final String PAR_FORWARD = "forward"; // optional, "all" (default) or "sample"
+    private static final String PAR_FORWARD_K = "forward.k"; // optional, default 1
+    private static final String PAR_FORWARD_ALPHA = "forward.alpha"; // optional, default 1.0
+    private static final String PAR_REINFORCE = "reinforce"; // optional, "instant" (default) or "backward"
 
     private final int linkablePid;
     private final int transportPid;
 
+    // Per-hop trace, shared by all clones (see AntTrace for the "trace" parameter)
+    private final AntTrace trace;
+
+    // Query outcome registry, shared by all clones (read by AntStatsObserver)
+    private final AntStats stats;
+
+    // Queries this node has already processed, null if dedup is off
+    private SeenCache seen;
+
+    // k-of-n forwarding, see sampleRouting
+    private final boolean sampleForwarding;
+    private final int forwardK;
+    private final double forwardAlpha;
+    // Scratch for the sampled slots, shared by all clones (single-threaded)
+    private final int[] picked;
+
+    // Reinforce through BackwardAnt messages instead of all at once
+    private final boolean backward;
+
+    // Shared by all clones, "log" parameter
+    private final Log log;
+
     // Constructor
     public AntProtocol(String prefix) {
         transportPid = Configuration.getPid(prefix + "." + PAR_TRANSPORT);
         linkablePid = Configuration.getPid(prefix + "." + PAR_LINKABLE);
+        trace = AntTrace.create(prefix);
+        log = Log.get(prefix);
+        stats = new AntStats();
+
+        int dedup = Configuration.getInt(prefix + "." + PAR_DEDUP, 0);
+        long window = Configuration.getLong(prefix + "." + PAR_DEDUP_WINDOW, Long.MAX_VALUE);
+        seen = (dedup > 0 ? new SeenCache(dedup, window) : null);
+
+        String forward = Configuration.getString(prefix + "." + PAR_FORWARD, "all");
+        if (!forward.equals("all") && !forward.equals("sample")) {
+            throw new IllegalParameterException(prefix + "." + PAR_FORWARD,
+                "Unknown forwarding mode " + forward + ", must be all or sample");
+        }
+        sampleForwarding = forward.equals("sample");
+        forwardK = Configuration.getInt(prefix + "." + PAR_FORWARD_K, 1);
+        forwardAlpha = Configuration.getDouble(prefix + "." + PAR_FORWARD_ALPHA, 1.0);
+        if (forwardK <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_FORWARD_K, "must be positive");
+        }
+        picked = new int[forwardK];
+
+        String reinforce = Configuration.getString(prefix + "." + PAR_REINFORCE, "instant");
+        if (!reinforce.equals("instant") && !reinforce.equals("backward")) {
+            throw new IllegalParameterException(prefix + "." + PAR_REINFORCE,
+                "Unknown reinforcement mode " + reinforce + ", must be instant or backward");
+        }
+        backward = reinforce.equals("backward");
+    }
 
+    /** Trace sink this protocol writes every hop to */
+    public AntTrace getTrace() {
+        return trace;
+    }
 
+    /** Query outcome registry this protocol reports to */
+    public AntStats getStats() {
+        return stats;
     }
 
     /**
@@ -41,12 +103,13 @@ public class AntProtocol implements EDProtocol {
         // "pherProtocol" has to be for "node"
         // dont forget to decrease TTL 
         // Iterate through neighbors of the current node
+        double low_bound = pherProtocol.getLowBound();
+        double high_bound = pherProtocol.getHighBound();
+
         for (int i = 0; i < pherProtocol.degree(); i++) {
             Node neighbor = pherProtocol.getNeighbor(i);
 
-            Double pheromone = pherProtocol.getPheromone(neighbor);
-            Double low_bound = pherProtocol.getLowBound();
-            Double high_bound = pherProtocol.getHighBound();
+            double pheromone = pherProtocol.getPheromoneAt(i);
 
             // System.out.println("Pheromone: " + pheromone + " Low Bound: " + low_bound + " High Bound: " + high_bound);
 
@@ -64,11 +127,78 @@ public class AntProtocol implements EDProtocol {
                     // Send the replicated message to the neighbor
                     Transport transport = (Transport) node.getProtocol(transportPid);
                     transport.send(node, neighbor, forwardedMsg, pid);
+                    stats.replicaSent(forwardedMsg);
                 }
             }
         }
     }
 
+    /**
+     * Bounded-fanout alternative to messageRouting ("forward sample"):
+     * forwards to at most k neighbors drawn with probability proportional
+     * to pheromone^alpha, and every hop costs one TTL. With k = 1 an ant
+     * is a pheromone-biased walk and sends at most TTL messages.
+     */
+    public void sampleRouting(PheromoneProtocol pherProtocol, Node node, int pid, AntMessage msg) {
+        // A dying ant goes nowhere, don't spend random draws on it
+        if (msg.getTtl() <= 1) { return; }
+        int n = pherProtocol.sampleNeighbors(msg, forwardK, forwardAlpha, picked);
+        if (n == 0) { return; }
+
+        Transport transport = (Transport) node.getProtocol(transportPid);
+        for (int j = 0; j < n; j++) {
+            AntMessage forwardedMsg = msg.replicateForForwarding();
+            forwardedMsg.setTtl(forwardedMsg.getTtl() - 1);
+            transport.send(node, pherProtocol.getNeighbor(picked[j]), forwardedMsg, pid);
+            stats.replicaSent(forwardedMsg);
+        }
+    }
+
+    /**
+     * Reinforce the trail of a successful ant. Walks the path once; every
+     * node on it counts a query hit on its edges to other path nodes and
+     * updates and normalizes its table in a single pass (see
+     * PheromoneProtocol.reinforce). A hit costs O(path * degree) instead
+     * of O(path^2 * degree), with the same result as before.
+     * 
+     * @param msg the ant that just found its resource at the last path node
+     */
+    public void reinforcePath(AntMessage msg) {
+        for (int i = 0; i < msg.getPathSize(); i++) {
+            // Pheromone protocol of the i-th node in path
+            PheromoneProtocol pathNodePherProtocol =
+                (PheromoneProtocol) msg.getPathNode(i).getProtocol(linkablePid);
+
+            pathNodePherProtocol.reinforce(msg);
+        }
+    }
+
+    /**
+     * Backward alternative to reinforcePath ("reinforce backward"): the
+     * node that found the resource reinforces its table and sends a
+     * BackwardAnt to the previous node on the path, which continues
+     * towards the source in processBackwardAnt. Each event does the work
+     * of one node, and updates arrive with the transport's delay.
+     * 
+     * @param node the node where msg found its resource, last on its path
+     */
+    public void startBackwardAnt(Node node, int pid, AntMessage msg) {
+        ((PheromoneProtocol) node.getProtocol(linkablePid)).reinforce(msg);
+        sendBackward(node, pid, new BackwardAnt(msg, msg.getPathSize() - 2));
+    }
+
+    /** Reinforces this node's table and passes bant on towards the source */
+    public void processBackwardAnt(Node node, int pid, BackwardAnt bant) {
+        ((PheromoneProtocol) node.getProtocol(linkablePid)).reinforce(bant.getAnt());
+        sendBackward(node, pid, bant.next());
+    }
+
+    private void sendBackward(Node node, int pid, BackwardAnt bant) {
+        if (bant.getHop() < 0) { return; } // source reached
+        Transport transport = (Transport) node.getProtocol(transportPid);
+        transport.send(node, bant.getAnt().getPathNode(bant.getHop()), bant, pid);
+    }
+
     /**
      * Forward "ant" from current node. Once successful and TTL expires,
      * update pheromone values of nodes traveled along the path. 
@@ -84,28 +214,13 @@ public class AntProtocol implements EDProtocol {
         // Return if TTL expires
         if (msg.getTtl() <= 0) { return; }
 
+        // A fresh ant is being launched at its source
+        if (msg.getPathSize() == 0) { stats.queryStarted(msg); }
+
         // Message has arrived at current node, add to path
         msg.addToPath(node);
 
-        FileOutputStream fos = null;
-
-        try {
-            String fname = "log.txt"; // "output.txt
-            fos = new FileOutputStream(fname, true);
-            PrintStream pstr = new PrintStream(fos);
-
-            pstr.println(msg.toString());
-
-            fos.close();
-        } catch (IOException e) {
-            if (fos != null) {
-                try { fos.close(); } 
-                catch (IOException e1) { }
-            }
-
-            throw new RuntimeException(e);
-        }
-
+        trace.record(msg);
 
         // Check if linkable is of type PheromoneProtocol
         if (!(node.getProtocol(linkablePid) instanceof PheromoneProtocol)) {
@@ -121,28 +236,9 @@ public class AntProtocol implements EDProtocol {
             // System.out.println("Has Content");
             // Increment hit count of message
             msg.incrementHitCount();
-            // Get path of message
-            List<Node> path = msg.getPath();
-
-            // Iterate through nodes in path
-            for (int i = 0; i < path.size(); i++) {
-                Node pathNode = path.get(i); // Current node in path
-
-                // Pheromone protocol of pathNode
-                PheromoneProtocol pathNodePherProtocol = 
-                    (PheromoneProtocol) pathNode.getProtocol(linkablePid);
-                
-                for (Node p : path) {
-                    // Update query hit table of path node
-                    // If other nodes in path are immediate neighbors of pathNode, increment
-                    if (pathNodePherProtocol.contains(p)) {
-                        pathNodePherProtocol.incrementQueryHit(p);
-                    }
-                }
-
-                pathNodePherProtocol.updatePherTable(); // Update pheromone table of pathNode
-                pathNodePherProtocol.normalizePherTable(); // Normalize pheromone table of pathNode
-            }
+            stats.hit(msg);
+            if (backward) { startBackwardAnt(node, pid, msg); }
+            else { reinforcePath(msg); }
         }
 
         // If resource isn't found in current node, forward message to other nodes
@@ -150,7 +246,8 @@ public class AntProtocol implements EDProtocol {
             // System.out.println("Doesn't Have Content"); 
             // even if a hit is found, keep routing until TTL expires
 
-            messageRouting(pherProtocol, node, pid, msg); // Algorithm 3
+            if (sampleForwarding) { sampleRouting(pherProtocol, node, pid, msg); }
+            else { messageRouting(pherProtocol, node, pid, msg); } // Algorithm 3
         // } 
     }
 
@@ -172,16 +269,28 @@ public class AntProtocol implements EDProtocol {
         if (event instanceof AntMessage) {
             msg = (AntMessage) event;
 
-            if (msg.inPath(node)) { return; } // Avoid loops
+            // Avoid loops
+            if (msg.inPath(node)) {
+                stats.duplicateSuppressed(msg);
+                return;
+            }
+            // Drop other copies of a query this node already processed
+            if (seen != null && !seen.add(msg.getQueryId(), CommonState.getTime())) {
+                stats.duplicateSuppressed(msg);
+                return;
+            }
 
-            if (msg.isHit()) {
-                System.out.println(msg.toString());
+            if (msg.isHit() && log.isDebug()) {
+                log.debug(msg.toString());
             }
             forwardAnt(node, pid, msg);
         }
+        else if (event instanceof BackwardAnt) {
+            processBackwardAnt(node, pid, (BackwardAnt) event);
+        }
         else {
             // Handle other types of events if necessary
-            System.err.println("Unexpected event type: " + event.getClass().getName());
+            log.error("Unexpected event type: " + event.getClass().getName());
         }
     }
 
@@ -198,6 +307,7 @@ public class AntProtocol implements EDProtocol {
             // This should not happen since AntProtocol implements Cloneable
             throw new InternalError(e.toString());
         }
+        if (seen != null) { ap.seen = seen.copyEmpty(); }
         return ap;
     }
 }
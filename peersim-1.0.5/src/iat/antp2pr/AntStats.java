@@ -0,0 +1,163 @@
+package iat.antp2pr;
+
+import java.util.Arrays;
+
+import peersim.core.CommonState;
+import peersim.util.IncrementalFreq;
+import peersim.util.IncrementalStats;
+
+/**
+ * Per-query outcome registry of AntP2PR, keyed by AntMessage.getQueryId().
+ * One instance is shared by every clone of an AntProtocol, which reports
+ * query starts, forwarded replicas, suppressed duplicates and hits to it.
+ * Per-query state is kept in primitive arrays indexed by query ID (IDs
+ * are dense), aggregates are updated as events happen so that
+ * AntStatsObserver can print summaries in O(1), without scanning the
+ * registry or any trace.
+ */
+public class AntStats {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // ----------------------------------------------------------
+    // Per-Query Registry
+    // ----------------------------------------------------------
+
+    private final int base; // first query ID of this run, earlier IDs are ignored
+    private long[] startTime = new long[0]; // -1 if the query was never started
+    private long[] firstHitTime = new long[0]; // -1 until the first hit
+    private int[] replicas = new int[0]; // messages sent on behalf of the query
+
+    // ----------------------------------------------------------
+    // Aggregates
+    // ----------------------------------------------------------
+
+    private int queries = 0;
+    private int hitQueries = 0;
+    private long totalReplicas = 0;
+    private long duplicates = 0;
+    private long startedReplicas = 0; // messages sent by started queries
+    private int maxReplicas = 0; // most messages sent by a started query
+
+    private final IncrementalStats latency = new IncrementalStats(); // time to first hit
+    private final IncrementalStats hops = new IncrementalStats(); // hops to first hit
+    private final IncrementalFreq hopFreq = new IncrementalFreq(); // histogram of hops
+
+    // Constructor, must run before the first query of the run is created
+    public AntStats() {
+        base = AntMessage.peekNextQueryId();
+    }
+
+    // ----------------------------------------------------------
+    // Event Methods
+    // ----------------------------------------------------------
+
+    /** The ant msg was just launched at its source */
+    public void queryStarted(AntMessage msg) {
+        int i = slot(msg.getQueryId());
+        if (i < 0 || startTime[i] >= 0) { return; }
+        startTime[i] = CommonState.getTime();
+        queries++;
+        countStarted(i, replicas[i]);
+    }
+
+    /** A replica of msg was handed to the transport */
+    public void replicaSent(AntMessage msg) {
+        int i = slot(msg.getQueryId());
+        if (i < 0) { return; }
+        replicas[i]++;
+        totalReplicas++;
+        if (startTime[i] >= 0) { countStarted(i, 1); }
+    }
+
+    /** A replica of msg was dropped by the loop check or the seen-query cache */
+    public void duplicateSuppressed(AntMessage msg) {
+        duplicates++;
+    }
+
+    /** msg found its resource at the last node of its path */
+    public void hit(AntMessage msg) {
+        int i = slot(msg.getQueryId());
+        if (i < 0 || startTime[i] < 0 || firstHitTime[i] >= 0) { return; }
+        firstHitTime[i] = CommonState.getTime();
+        hitQueries++;
+
+        int h = msg.getPathSize() - 1;
+        latency.add(firstHitTime[i] - startTime[i]);
+        hops.add(h);
+        hopFreq.add(h);
+    }
+
+    // ----------------------------------------------------------
+    // Getters
+    // ----------------------------------------------------------
+
+    // Number of queries started
+    public int getQueries() {
+        return queries;
+    }
+    // Number of queries with at least one hit
+    public int getHitQueries() {
+        return hitQueries;
+    }
+    // Fraction of started queries with at least one hit
+    public double getHitRate() {
+        return queries == 0 ? 0 : (double) hitQueries / queries;
+    }
+    // Total messages sent by all queries
+    public long getTotalReplicas() {
+        return totalReplicas;
+    }
+    // Total replicas dropped by the loop check or the seen-query cache
+    public long getDuplicates() {
+        return duplicates;
+    }
+    // Time from query start to first hit, over hit queries
+    public IncrementalStats getLatency() {
+        return latency;
+    }
+    // Hops from source to first hit, over hit queries
+    public IncrementalStats getHops() {
+        return hops;
+    }
+    // Histogram of hops to first hit
+    public IncrementalFreq getHopFreq() {
+        return hopFreq;
+    }
+
+    // Average messages sent per started query
+    public double getAvgMessagesPerQuery() {
+        return queries == 0 ? 0 : (double) startedReplicas / queries;
+    }
+    // Most messages sent by a started query
+    public int getMaxMessagesPerQuery() {
+        return maxReplicas;
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /** Adds n messages of started query i to the running sums */
+    private void countStarted(int i, int n) {
+        startedReplicas += n;
+        if (replicas[i] > maxReplicas) { maxReplicas = replicas[i]; }
+    }
+
+    /** Array index of query id, growing the registry if needed */
+    private int slot(int id) {
+        int i = id - base;
+        if (i < 0) { return -1; }
+        if (i >= startTime.length) { grow(i + 1); }
+        return i;
+    }
+
+    private void grow(int min) {
+        int old = startTime.length;
+        int cap = Math.max(min, Math.max(INITIAL_CAPACITY, old * 2));
+        startTime = Arrays.copyOf(startTime, cap);
+        firstHitTime = Arrays.copyOf(firstHitTime, cap);
+        replicas = Arrays.copyOf(replicas, cap);
+        Arrays.fill(startTime, old, cap, -1L);
+        Arrays.fill(firstHitTime, old, cap, -1L);
+    }
+}
@@ -0,0 +1,72 @@
+package iat.antp2pr;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.util.IncrementalStats;
+
+/**
+ * Prints a one-line summary of the AntStats registry of an AntProtocol:
+ * started queries, hit rate, messages per query, suppressed duplicates,
+ * hops and time to first hit, and the histogram of hops to first hit as
+ * (hops,queries) pairs. Figures are cumulative since the start of the run.
+ *
+ * control.stats iat.antp2pr.AntStatsObserver
+ * control.stats.protocol ant
+ * control.stats.step simulation.logtime
+ */
+public class AntStatsObserver implements Control {
+
+    // Constant string used as key, specifies protocol parameter
+    private static final String PAR_PROTO = "protocol";
+
+    // Name of this observer in the output
+    private final String name;
+
+    // ID of AntProtocol
+    private final int pid;
+
+    // Constructor
+    public AntStatsObserver(String prefix) {
+        name = prefix;
+        pid = Configuration.getPid(prefix + "." + PAR_PROTO);
+    }
+
+    @Override
+    public boolean execute() {
+        AntStats stats = ((AntProtocol) Network.prototype.getProtocol(pid)).getStats();
+
+        System.out.println(name + ": " + CommonState.getTime()
+            + " queries=" + stats.getQueries()
+            + " hits=" + stats.getHitQueries()
+            + " hitrate=" + format(stats.getHitRate())
+            + " msgs=" + stats.getTotalReplicas()
+            + " msgs/query=" + summary(stats.getQueries(),
+                stats.getAvgMessagesPerQuery(), stats.getMaxMessagesPerQuery())
+            + " dups=" + stats.getDuplicates()
+            + " hops=" + summary(stats.getHops())
+            + " latency=" + summary(stats.getLatency())
+            + " hist=" + stats.getHopFreq().toString().trim());
+        return false;
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /** avg/max of stats, or - if empty */
+    private static String summary(IncrementalStats stats) {
+        return summary(stats.getN(), stats.getAverage(), stats.getMax());
+    }
+
+    /** avg/max over n values, or - if n is 0 */
+    private static String summary(int n, double avg, double max) {
+        if (n == 0) { return "-"; }
+        return format(avg) + "/" + format(max);
+    }
+
+    private static String format(double x) {
+        return String.format("%.3f", x);
+    }
+}
@@ -0,0 +1,153 @@
+package iat.antp2pr;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+
+/**
+ * Sink for the per-hop ant trace (one record per ant arriving at a node).
+ * One instance is shared by every clone of an AntProtocol, so all nodes
+ * append to the same trace. The sink is chosen by the protocol parameter
+ * "trace":
+ * - "none" discards all records
+ * - "file" appends to a buffered file (default, same output as before)
+ * - "async" hands records to a background writer through a bounded ring
+ * The "trace.format" parameter selects "text" (AntMessage.toString() lines,
+ * default) or "binary" (see {@link AntTraceCodec}, read with {@link TraceReader}).
+ * A binary trace overwrites the file, a text trace is appended to it.
+ * With simulation.experiments > 1 each experiment builds a new sink and the
+ * previous one is closed: text traces keep appending to the same file,
+ * binary traces of experiment k > 0 go to their own file, trace.file + "." + k
+ * (e.g. log.bin, log.bin.1, log.bin.2), each with its header.
+ * Records are only guaranteed to be on disk after {@link #flush()}, which
+ * {@link AntTraceControl} calls at the end of each run.
+ */
+public abstract class AntTrace {
+
+    // ----------------------------------------------------------
+    // Config Parameters
+    // ----------------------------------------------------------
+
+    private static final String PAR_TRACE = "trace";
+    private static final String PAR_FILE = "trace.file"; // optional, default "log.txt"
+    private static final String PAR_CAPACITY = "trace.capacity"; // optional, async only
+    private static final String PAR_FORMAT = "trace.format"; // optional, default "text"
+
+    private static final String DEFAULT_FILE = "log.txt";
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Open sink and experiments started so far, per prefix
+    private static final Map<String, AntTrace> sinks = new HashMap<>();
+    private static final Map<String, Integer> experiments = new HashMap<>();
+    private static boolean hooked = false;
+
+    /** Sink that drops every record */
+    public static final AntTrace NONE = new AntTrace() {
+        @Override
+        public void record(AntMessage msg) { }
+        @Override
+        public void flush() { }
+        @Override
+        public void close() { }
+    };
+
+    // ----------------------------------------------------------
+    // Initialization
+    // ----------------------------------------------------------
+
+    /** Builds the sink configured under prefix (usually the protocol prefix) */
+    public static AntTrace create(String prefix) {
+        String mode = Configuration.getString(prefix + "." + PAR_TRACE, "file");
+        String fname = Configuration.getString(prefix + "." + PAR_FILE, DEFAULT_FILE);
+        String format = Configuration.getString(prefix + "." + PAR_FORMAT, "text");
+
+        if (!format.equals("text") && !format.equals("binary")) {
+            throw new IllegalParameterException(prefix + "." + PAR_FORMAT,
+                "Unknown trace format " + format + ", must be text or binary");
+        }
+        AntTraceCodec codec = new AntTraceCodec(format.equals("binary"));
+
+        if (mode.equals("none")) { return NONE; }
+
+        // A new prototype for prefix means a new experiment, the previous
+        // one's trace is complete
+        int experiment;
+        synchronized (sinks) {
+            AntTrace previous = sinks.remove(prefix);
+            if (previous != null) { previous.close(); }
+            experiment = experiments.merge(prefix, 1, Integer::sum) - 1;
+        }
+        if (codec.isBinary() && experiment > 0) { fname = fname + "." + experiment; }
+
+        AntTrace trace;
+        if (mode.equals("file")) {
+            trace = new BufferedAntTrace(fname, codec);
+        } else if (mode.equals("async")) {
+            int capacity = Configuration.getInt(prefix + "." + PAR_CAPACITY, DEFAULT_CAPACITY);
+            trace = new AsyncAntTrace(fname, codec, capacity);
+        } else {
+            throw new IllegalParameterException(prefix + "." + PAR_TRACE,
+                "Unknown trace mode " + mode + ", must be none, file or async");
+        }
+
+        synchronized (sinks) {
+            sinks.put(prefix, trace);
+            if (!hooked) {
+                // Safety net for runs without an AntTraceControl, one hook
+                // for all sinks
+                Runtime.getRuntime().addShutdownHook(new Thread(AntTrace::closeAll));
+                hooked = true;
+            }
+        }
+        return trace;
+    }
+
+    /** Closes every open sink */
+    private static void closeAll() {
+        synchronized (sinks) {
+            for (AntTrace trace : sinks.values()) { trace.close(); }
+            sinks.clear();
+        }
+    }
+
+    // ----------------------------------------------------------
+    // Sink Methods
+    // ----------------------------------------------------------
+
+    /** Appends the current state of msg to the trace */
+    public abstract void record(AntMessage msg);
+
+    /** Blocks until every record so far has been written out */
+    public abstract void flush();
+
+    /** Flushes and releases the underlying file, further records are lost */
+    public abstract void close();
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /**
+     * Opens fname through a large buffer. Text traces are appended to; a
+     * binary trace replaces any existing file and starts with the header,
+     * as records appended to an older file could follow a text trace or a
+     * truncated last record and would not be readable.
+     */
+    protected static OutputStream open(String fname, AntTraceCodec codec) {
+        try {
+            boolean append = !codec.isBinary();
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(fname, append), BUFFER_SIZE);
+            out.write(codec.header());
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
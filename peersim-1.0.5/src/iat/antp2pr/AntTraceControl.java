@@ -0,0 +1,34 @@
+package iat.antp2pr;
+
+import peersim.config.Configuration;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * Flushes the ant trace of an AntProtocol. Meant to be scheduled with
+ * FINAL, so the whole trace is on disk when the simulation ends, e.g.
+ * control.trace iat.antp2pr.AntTraceControl
+ * control.trace.protocol ant
+ * control.trace.at -1
+ * control.trace.FINAL
+ */
+public class AntTraceControl implements Control {
+
+    // Constant string used as key, specifies protocol parameter
+    private static final String PAR_PROTO = "protocol";
+
+    // ID of AntProtocol
+    private final int pid;
+
+    // Constructor
+    public AntTraceControl(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROTO);
+    }
+
+    @Override
+    public boolean execute() {
+        // Every node shares the trace of the prototype
+        ((AntProtocol) Network.prototype.getProtocol(pid)).getTrace().flush();
+        return false;
+    }
+}
@@ -0,0 +1,162 @@
+package iat.antp2pr;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+import peersim.edsim.EDSimulator;
+import peersim.util.AliasTable;
+
+/**
+ * Query workload for AntP2PR. Unlike AntControl, which starts one query
+ * per step, every execution schedules a whole step worth of queries
+ * through EDSimulator.add, spread over the next "step" time units.
+ *
+ * Arrivals ("arrival" parameter):
+ * - poisson: the number of queries per step is Poisson distributed with
+ *   mean rate * network size, arrival times are uniform within the step
+ *   (i.e. a Poisson process)
+ * - bursty: like poisson, but with probability burst.prob a step is a
+ *   burst and its mean is multiplied by burst.factor
+ *
+ * Content ("content" parameter) is either uniform over the universe or
+ * Zipf distributed with exponent alpha, drawn from a precomputed alias
+ * table. Resource 0 is the most popular, matching the ranks used by
+ * iat.resource.ResourceInitializer. Sources are uniform over the nodes.
+ * All draws come from CommonState.r.
+ *
+ * control.load iat.antp2pr.AntWorkload
+ * control.load.protocol ant
+ * control.load.step CYCLE
+ * control.load.rate 0.1
+ * control.load.ttl 3
+ * control.load.content zipf
+ * control.load.alpha 1.0
+ */
+public class AntWorkload implements Control {
+
+    // ----------------------------------------------------------
+    // Config Parameters
+    // ----------------------------------------------------------
+
+    private static final String PAR_PROTO = "protocol";
+    private static final String PAR_STEP = "step"; // same as the scheduler's step
+    private static final String PAR_RATE = "rate"; // optional, queries per node per step, default 1/size
+    private static final String PAR_TTL = "ttl"; // optional, default 3
+    private static final String PAR_ARRIVAL = "arrival"; // optional, default "poisson"
+    private static final String PAR_BURST_PROB = "burst.prob"; // optional, default 0.1
+    private static final String PAR_BURST_FACTOR = "burst.factor"; // optional, default 10
+    private static final String PAR_CONTENT = "content"; // optional, default "uniform"
+    private static final String PAR_UNIVERSE = "universe"; // optional, default as PheromoneProtocol
+    private static final String PAR_ALPHA = "alpha"; // optional, default 1.0
+
+    private static final int DEFAULT_TTL = 3;
+
+    // nextPoisson underflows exp(-mean) for large means, so large means
+    // are drawn as a sum of Poisson variables of at most this mean
+    private static final double MAX_POISSON_MEAN = 500;
+
+    // ----------------------------------------------------------
+    // Fields
+    // ----------------------------------------------------------
+
+    // ID of AntProtocol
+    private final int pid;
+    private final long step;
+    private final double rate;
+    private final int ttl;
+    private final boolean bursty;
+    private final double burstProb;
+    private final double burstFactor;
+    private final int universe;
+    private final AliasTable popularity; // null for uniform content
+
+    // Constructor
+    public AntWorkload(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROTO);
+        step = Configuration.getLong(prefix + "." + PAR_STEP, 1);
+        rate = Configuration.getDouble(prefix + "." + PAR_RATE, -1);
+        ttl = Configuration.getInt(prefix + "." + PAR_TTL, DEFAULT_TTL);
+        burstProb = Configuration.getDouble(prefix + "." + PAR_BURST_PROB, 0.1);
+        burstFactor = Configuration.getDouble(prefix + "." + PAR_BURST_FACTOR, 10);
+        universe = Configuration.getInt(prefix + "." + PAR_UNIVERSE, PheromoneProtocol.POSSIBLE_RESOURCES);
+
+        String arrival = Configuration.getString(prefix + "." + PAR_ARRIVAL, "poisson");
+        if (arrival.equals("poisson")) {
+            bursty = false;
+        } else if (arrival.equals("bursty")) {
+            bursty = true;
+        } else {
+            throw new IllegalParameterException(prefix + "." + PAR_ARRIVAL,
+                "Unknown arrival process " + arrival + ", must be poisson or bursty");
+        }
+
+        String content = Configuration.getString(prefix + "." + PAR_CONTENT, "uniform");
+        if (content.equals("uniform")) {
+            popularity = null;
+        } else if (content.equals("zipf")) {
+            double alpha = Configuration.getDouble(prefix + "." + PAR_ALPHA, 1.0);
+            popularity = AliasTable.zipf(universe, alpha);
+        } else {
+            throw new IllegalParameterException(prefix + "." + PAR_CONTENT,
+                "Unknown content distribution " + content + ", must be uniform or zipf");
+        }
+
+        if (step <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_STEP, "must be positive");
+        }
+        if (universe <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_UNIVERSE, "must be positive");
+        }
+    }
+
+    // ----------------------------------------------------------
+    // Control Methods
+    // ----------------------------------------------------------
+
+    /**
+     * Schedules the queries arriving during the next step. Each query is
+     * delivered to its source as an event, so AntProtocol.processEvent
+     * starts it exactly like a forwarded ant.
+     */
+    @Override
+    public boolean execute() {
+        int size = Network.size();
+        if (size == 0) { return false; }
+
+        // Without a rate, one query per step on average (as AntControl)
+        double mean = (rate < 0 ? 1.0 : rate * size);
+        if (bursty && CommonState.r.nextDouble() < burstProb) { mean *= burstFactor; }
+
+        int queries = nextPoisson(mean);
+        for (int q = 0; q < queries; q++) {
+            Node src = Network.get(CommonState.r.nextInt(size));
+            long delay = (long) (CommonState.r.nextDouble() * step);
+            AntMessage msg = new AntMessage(src, src, nextContent(), ttl);
+            EDSimulator.add(delay, msg, src, pid);
+        }
+        return false;
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /** Query content, uniform or by popularity rank */
+    private int nextContent() {
+        if (popularity == null) { return CommonState.r.nextInt(universe); }
+        return popularity.next(CommonState.r);
+    }
+
+    /** Poisson variable of any mean, as a sum of bounded ones */
+    private static int nextPoisson(double mean) {
+        int count = 0;
+        while (mean > MAX_POISSON_MEAN) {
+            count += CommonState.r.nextPoisson(MAX_POISSON_MEAN);
+            mean -= MAX_POISSON_MEAN;
+        }
+        return count + CommonState.r.nextPoisson(mean);
+    }
+}
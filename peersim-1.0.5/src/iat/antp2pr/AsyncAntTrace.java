@@ -0,0 +1,131 @@
+package iat.antp2pr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Trace sink that encodes each record on the simulation thread and hands
+ * it to a background writer thread through a bounded ring buffer. The
+ * simulation only blocks when the ring is full, i.e. when the disk cannot
+ * keep up; records are never dropped.
+ */
+public class AsyncAntTrace extends AntTrace {
+
+    // Max records moved from the ring per write batch
+    private static final int BATCH_SIZE = 1024;
+
+    // Either an encoded record (byte[]) or a CountDownLatch asking for a flush
+    private final BlockingQueue<Object> ring;
+    private final AntTraceCodec codec;
+    private final OutputStream out;
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+    // First I/O error of the writer thread, rethrown on the simulation thread
+    private volatile IOException error = null;
+
+    // Constructor
+    public AsyncAntTrace(String fname, AntTraceCodec codec, int capacity) {
+        ring = new ArrayBlockingQueue<>(capacity);
+        this.codec = codec;
+        out = open(fname, codec);
+
+        writer = new Thread(this::drain, "ant-trace-writer");
+        writer.setDaemon(true); // must not keep the JVM alive, close() drains
+        writer.start();
+    }
+
+    // ----------------------------------------------------------
+    // Sink Methods
+    // ----------------------------------------------------------
+
+    @Override
+    public void record(AntMessage msg) {
+        if (closed) { return; }
+        checkError();
+        // Encode here, the message keeps changing after this hop
+        codec.encode(msg);
+        put(codec.toByteArray());
+    }
+
+    @Override
+    public void flush() {
+        if (closed) { return; }
+
+        CountDownLatch done = new CountDownLatch(1);
+        put(done);
+        try { done.await(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+        checkError();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) { return; }
+
+        flush();
+        closed = true;
+        writer.interrupt();
+        try { out.close(); }
+        catch (IOException e) { throw new RuntimeException(e); }
+    }
+
+    // ----------------------------------------------------------
+    // Writer Thread
+    // ----------------------------------------------------------
+
+    private void drain() {
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!closed) {
+                batch.add(ring.take()); // wait for at least one record
+                ring.drainTo(batch, BATCH_SIZE - 1);
+
+                for (Object item : batch) {
+                    if (item instanceof CountDownLatch) {
+                        flushQuietly();
+                        ((CountDownLatch) item).countDown();
+                    } else if (error == null) {
+                        write((byte[]) item);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed, nothing left to write
+        }
+    }
+
+    private void write(byte[] record) {
+        try {
+            out.write(record);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void flushQuietly() {
+        if (error != null) { return; }
+        try { out.flush(); }
+        catch (IOException e) { error = e; }
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    private void put(Object item) {
+        try { ring.put(item); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private void checkError() {
+        if (error != null) { throw new RuntimeException(error); }
+    }
+}
@@ -0,0 +1,39 @@
+package iat.antp2pr;
+
+/**
+ * Backward ant of AntP2PR ("reinforce backward"). Created when a query
+ * ant finds its resource, it walks the query ant's path back to the
+ * source through the transport, one hop per event, and every node it
+ * reaches reinforces its pheromone table. The query ant's path prefix
+ * never changes after the hit (replicas only append), so the backward
+ * ant just refers to it.
+ */
+public class BackwardAnt {
+    private final AntMessage ant; // the successful query ant
+    private final int hop; // path position of the node this is sent to
+
+    public BackwardAnt(AntMessage ant, int hop) {
+        this.ant = ant;
+        this.hop = hop;
+    }
+
+    // Getter for the successful query ant
+    public AntMessage getAnt() {
+        return ant;
+    }
+
+    // Getter for the path position of the receiving node
+    public int getHop() {
+        return hop;
+    }
+
+    /** Backward ant for the previous node on the path */
+    public BackwardAnt next() {
+        return new BackwardAnt(ant, hop - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "BackwardAnt{queryId=" + ant.getQueryId() + ", hop=" + hop + '}';
+    }
+}
@@ -0,0 +1,46 @@
+package iat.antp2pr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Trace sink that appends records to a file through a large buffer,
+ * so the file is opened once per run instead of per hop.
+ */
+public class BufferedAntTrace extends AntTrace {
+
+    private final AntTraceCodec codec;
+    private OutputStream out;
+
+    // Constructor
+    public BufferedAntTrace(String fname, AntTraceCodec codec) {
+        this.codec = codec;
+        out = open(fname, codec);
+    }
+
+    @Override
+    public synchronized void record(AntMessage msg) {
+        if (out == null) { return; } // closed
+
+        codec.encode(msg);
+        try { codec.writeTo(out); }
+        catch (IOException e) { throw new RuntimeException(e); }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (out == null) { return; }
+
+        try { out.flush(); }
+        catch (IOException e) { throw new RuntimeException(e); }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out == null) { return; }
+
+        try { out.close(); }
+        catch (IOException e) { throw new RuntimeException(e); }
+        finally { out = null; }
+    }
+}
@@ -1,11 +1,7 @@
 package iat.antp2pr;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-
+import iat.resource.ResourceHolder;
+import iat.resource.ResourceStore;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Linkable;
@@ -21,7 +17,7 @@ import peersim.core.Protocol;
  * IdleProtocol, but with extra features. Should work with
  * WireGraph protocols, because it implements Linkable. 
  */
-public class PheromoneProtocol implements Protocol, Linkable {
+public class PheromoneProtocol implements Protocol, Linkable, ResourceHolder {
 
     // ----------------------------------------------------------
     // Config Parameters
@@ -32,6 +28,7 @@ public class PheromoneProtocol implements Protocol, Linkable {
      * - q1, q2 determines aggressiveness of pheromone updates
      * - high and low represents pheromone thresholds during message routing
      * - capacity is how many neighbors can we store
+     * - evaporation is the decay rate per time unit, 0 for none
      */
      
     private static final String PAR_Q1 = "q1";
@@ -39,33 +36,57 @@ public class PheromoneProtocol implements Protocol, Linkable {
     private static final String PAR_HIGH = "high";
     private static final String PAR_LOW = "low";
     private static final String PAR_INITCAP = "capacity"; // optional, default defined below
+    private static final String PAR_EVAPORATION = "evaporation"; // optional, default 0
 
     // ----------------------------------------------------------
     // Fields
     // ----------------------------------------------------------
 
     // For AntP2PR implementation
-    // <neighbor index (in neighbors), pheromone value>
-    protected Map<Node, Double> pherTable = new HashMap<>(); 
-    // <neighbor index, query hit count>
-    protected Map<Node, Integer> queryHitCount = new HashMap<>();
+    // Both tables are parallel to neighbors: slot i belongs to neighbors[i]
+    // unnormalized pheromone weight per neighbor slot,
+    // the pheromone value is pherTable[i] / pherTotal
+    protected double[] pherTable;
+    // running sum of pherTable[0..len)
+    protected double pherTotal;
+    // query hit count per neighbor slot
+    protected int[] queryHitCount;
     // Resources are abstracted as unique integers
-    protected List<Integer> resources = new ArrayList<>();
+    protected ResourceStore resources = newResourceStore();
     // Parameters for update function
     protected double q1, q2, low, high; 
+    // Evaporation rate and time of the last table update
+    protected double evaporation;
+    protected long lastUpdate;
 
     // For Linkable implementation
     protected Node[] neighbors;
     // Length of neighbors, pherTable, and queryHitCount
     protected int len;
+
+    // For pheromone-biased sampling (see sampleNeighbors)
+    // Fenwick tree over sampleWeight, 1-based, valid only if sampleValid
+    private double[] fenwick;
+    // pheromone^sampleAlpha per neighbor slot, 0 while drawn
+    private double[] sampleWeight;
+    private double sampleAlpha;
+    private boolean sampleValid = false;
+    // slots taken out of the tree during one sampleNeighbors call
+    private int[] drawn;
+    private double[] drawnWeight;
     
     private static final int DEFAULT_INITIAL_CAPACITY = 10; // default neighbor capacity
     private static final int MIN_RES_CAPACITY = 1; // min resource capacity
     private static final int MAX_RES_CAPACITY = 10; // max resource capacity
 
-    private static final int POSSIBLE_RESOURCES = 50;
+    static final int POSSIBLE_RESOURCES = 50;
 
-    private Random random = new Random();
+    // Weights are rescaled to sum 1 when their total leaves this range
+    private static final double MAX_TOTAL = 1e100;
+    private static final double MIN_TOTAL = 1e-100;
+
+    // All randomness comes from CommonState.r, so runs are reproducible
+    // from random.seed
 
     // ----------------------------------------------------------
     // Initialization
@@ -78,12 +99,17 @@ public class PheromoneProtocol implements Protocol, Linkable {
         q2 = Configuration.getDouble(prefix + "." + PAR_Q2);
         low = Configuration.getDouble(prefix + "." + PAR_LOW);
         high = Configuration.getDouble(prefix + "." + PAR_HIGH);
-        // Create neighbors table of defined capacity
-        neighbors = new Node[Configuration.getInt(prefix + "." + PAR_INITCAP,
-			DEFAULT_INITIAL_CAPACITY)];
+        evaporation = Configuration.getDouble(prefix + "." + PAR_EVAPORATION, 0.0);
+        lastUpdate = 0;
+        // Create neighbors, pheromone and query hit tables of defined capacity
+        int capacity = Configuration.getInt(prefix + "." + PAR_INITCAP, DEFAULT_INITIAL_CAPACITY);
+        neighbors = new Node[capacity];
+        pherTable = new double[capacity];
+        queryHitCount = new int[capacity];
 	    len = 0; // neighbor count
+        pherTotal = 0.0;
 
-        int resource_capacity = random.nextInt(MAX_RES_CAPACITY - MIN_RES_CAPACITY + 1) + MIN_RES_CAPACITY;
+        int resource_capacity = CommonState.r.nextInt(MAX_RES_CAPACITY - MIN_RES_CAPACITY + 1) + MIN_RES_CAPACITY;
 
         // Initialize resources
         for (int i = 0; i < resource_capacity; i++) {
@@ -101,63 +127,217 @@ public class PheromoneProtocol implements Protocol, Linkable {
      * Algorithm 1 in Loukos et al. 2010
      * Update entire pheromone table
      * This is performed after processing a successful message
+     * 
+     * The paper adds delta to normalized values. Weights are pherTotal
+     * times the normalized values, so delta is scaled by pherTotal;
+     * reading the table afterwards gives exactly what Algorithm 2 would.
+     * Evaporation since the last update shrinks the old values relative
+     * to the deltas, see evaporate().
      */
     public void updatePherTable() {
-        // Iterate through the pherTable map
-        for (Map.Entry<Node, Double> entry : pherTable.entrySet()) {
-            Node neighbor = entry.getKey();
-            Double pheromone = entry.getValue();
-            int queryHit = queryHitCount.get(neighbor);
-                    
+        double scale = pherTotal / evaporate();
+
+        // Iterate through the neighbor slots
+        for (int i = 0; i < len; i++) {
             // Update the value (for example, increment by 1)
-            Double delta = q1 * Math.pow(Math.E, q2 * queryHit);
-                    
+            double delta = q1 * Math.pow(Math.E, q2 * queryHitCount[i]) * scale;
+
             // Update the value in pherTable
-            pherTable.put(neighbor, pheromone + delta);
+            pherTable[i] += delta;
+            pherTotal += delta;
+        }
+        sampleValid = false;
+
+        checkTotal();
+    }
+
+    /**
+     * Run Algorithms 1 and 2 after a successful ant went through this
+     * node: count a query hit for every neighbor on the ant's path, then
+     * update the table. Path membership is an O(1) check on the ant and
+     * normalization is implicit, so this is a single O(degree) pass.
+     */
+    public void reinforce(AntMessage msg) {
+        for (int i = 0; i < len; i++) {
+            if (msg.inPath(neighbors[i])) { queryHitCount[i]++; }
         }
+        updatePherTable();
     }
 
     /**
      * Algorithm 2 in Loukos et al. 2010
-     * Normalizes values in pheromone table within range [0,1]
-     * This is performed after updating the pheromone table
+     * Values are always read normalized (weight / pherTotal), so this only
+     * rescales the weights to sum 1. Called automatically when the total
+     * drifts towards overflow or underflow.
      */
     public void normalizePherTable() {
-        Double sum = 0.0;
-        for (Map.Entry<Node, Double> entry : pherTable.entrySet()) {
-            sum = sum + entry.getValue();
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            pherTable[i] = pherTable[i] / pherTotal;
+            sum += pherTable[i];
+        }
+        pherTotal = sum; // 1 up to rounding, recomputed to drop accumulated error
+        sampleValid = false;
+    }
+
+    /**
+     * Lazy evaporation: the table decays by exp(-evaporation * dt) since
+     * the last update. Every entry decays alike and values are read
+     * normalized, so decay never has to touch the table: it only matters
+     * against new deposits, which are scaled up by 1 / factor instead.
+     * Idle nodes pay nothing, reads pay nothing.
+     * 
+     * @return the decay factor since the last update, which is moved to now
+     */
+    private double evaporate() {
+        long now = CommonState.getTime();
+        double factor = 1.0;
+        if (evaporation > 0 && now > lastUpdate) {
+            factor = Math.max(Math.exp(-evaporation * (now - lastUpdate)), MIN_TOTAL);
+        }
+        lastUpdate = now;
+        return factor;
+    }
+
+    /** Renormalize if the running total left the safe range */
+    private void checkTotal() {
+        if (pherTotal > MAX_TOTAL || (pherTotal < MIN_TOTAL && len > 0)) {
+            normalizePherTable();
         }
+    }
 
-        for (Map.Entry<Node, Double> entry : pherTable.entrySet()) {
-            pherTable.put(entry.getKey(), entry.getValue() / sum );
-        } 
+    /** Pheromone value of the neighbor stored in slot i of neighbors */
+    public double getPheromoneAt(int i) {
+        return pherTable[i] / pherTotal;
     }
 
-    public Double getPheromone(Node node) {
-        if (pherTable.containsKey(node)) {
+    public double getPheromone(Node node) {
+        int i = indexOf(node);
+        if (i >= 0) {
             // Retrieve and return the pheromone value associated with the node
-            return pherTable.get(node);
+            return getPheromoneAt(i);
         } else {
             // If the node is not found in the pherTable
             throw new IllegalArgumentException("Node not found in the pherTable");
         }   
     }
 
-    public Double getLowBound() {
+    public double getLowBound() {
         return low;
     }
 
-    public Double getHighBound() {
+    public double getHighBound() {
         return high;
     }
 
+    // ----------------------------------------------------------
+    // Pheromone-Biased Sampling
+    // ----------------------------------------------------------
+
+    /**
+     * Draws up to k distinct neighbor slots without replacement, each with
+     * probability proportional to pheromone^alpha. Neighbors that msg
+     * already visited and its source are skipped, since they would only
+     * drop the ant. The slots are written to out, their number returned.
+     * 
+     * The weights sit in a Fenwick tree rebuilt in O(degree) after the
+     * table changes; each draw is O(log degree). A drawn slot is taken
+     * out of the tree so it can't be drawn again, and put back at the end.
+     */
+    public int sampleNeighbors(AntMessage msg, int k, double alpha, int[] out) {
+        if (!sampleValid || alpha != sampleAlpha) { buildSampler(alpha); }
+
+        int picked = 0, ndrawn = 0;
+        double remaining = fenwickSum();
+        while (picked < k && ndrawn < len && remaining > 0) {
+            int i = fenwickFind((1.0 - CommonState.r.nextDouble()) * remaining);
+            if (i < 0) { break; } // only rounding residue left
+
+            double w = sampleWeight[i];
+            drawn[ndrawn] = i;
+            drawnWeight[ndrawn++] = w;
+            sampleWeight[i] = 0.0;
+            fenwickAdd(i, -w);
+            remaining -= w;
+
+            Node neighbor = neighbors[i];
+            if (neighbor == msg.getSource() || msg.inPath(neighbor)) { continue; }
+            out[picked++] = i;
+        }
+
+        // Put the drawn slots back
+        for (int j = 0; j < ndrawn; j++) {
+            sampleWeight[drawn[j]] = drawnWeight[j];
+            fenwickAdd(drawn[j], drawnWeight[j]);
+        }
+        return picked;
+    }
+
+    /** Fills the tree with the current pheromone^alpha weights in O(len) */
+    private void buildSampler(double alpha) {
+        if (fenwick == null || fenwick.length < len + 1) {
+            fenwick = new double[neighbors.length + 1];
+            sampleWeight = new double[neighbors.length];
+            drawn = new int[neighbors.length];
+            drawnWeight = new double[neighbors.length];
+        }
+        for (int i = 0; i < len; i++) {
+            double p = getPheromoneAt(i);
+            sampleWeight[i] = (alpha == 1.0 ? p : Math.pow(p, alpha));
+            fenwick[i + 1] = sampleWeight[i];
+        }
+        // Linear-time construction: push each node into its parent
+        for (int i = 1; i <= len; i++) {
+            int parent = i + (i & -i);
+            if (parent <= len) { fenwick[parent] += fenwick[i]; }
+        }
+        sampleAlpha = alpha;
+        sampleValid = true;
+    }
+
+    private void fenwickAdd(int slot, double delta) {
+        for (int i = slot + 1; i <= len; i += i & -i) { fenwick[i] += delta; }
+    }
+
+    private double fenwickSum() {
+        double sum = 0.0;
+        for (int i = len; i > 0; i -= i & -i) { sum += fenwick[i]; }
+        return sum;
+    }
+
+    /** First slot whose prefix sum reaches target, -1 if it lands on no weight */
+    private int fenwickFind(double target) {
+        int pos = 0;
+        for (int step = Integer.highestOneBit(len); step > 0; step >>= 1) {
+            if (pos + step <= len && fenwick[pos + step] < target) {
+                pos += step;
+                target -= fenwick[pos];
+            }
+        }
+        // Rounding can overshoot to an empty or drawn slot, step back
+        if (pos >= len) { pos = len - 1; }
+        while (pos >= 0 && sampleWeight[pos] <= 0) { pos--; }
+        return pos;
+    }
+
     // ----------------------------------------------------------
     // Query Hit Table Methods
     // ----------------------------------------------------------
 
-    /** Increment query hit count for neighbor */
+    /** Increment query hit count for the neighbor in slot i of neighbors */
+    public void incrementQueryHitAt(int i) {
+        queryHitCount[i]++;
+    }
+
+    /** Query hit count for the neighbor in slot i of neighbors */
+    public int getQueryHitAt(int i) {
+        return queryHitCount[i];
+    }
+
+    /** Increment query hit count for neighbor, ignored if not a neighbor */
     public void incrementQueryHit(Node neighbor) {
-        queryHitCount.put(neighbor, queryHitCount.getOrDefault(neighbor, 0) + 1);
+        int i = indexOf(neighbor);
+        if (i >= 0) { queryHitCount[i]++; }
     }
 
     // ----------------------------------------------------------
@@ -177,6 +357,11 @@ public class PheromoneProtocol implements Protocol, Linkable {
         return resources.contains(resource);
     }
 
+    @Override
+    public ResourceStore getResourceStore() {
+        return resources;
+    }
+
     // ----------------------------------------------------------
     // EDProtocol Implementation
     // ----------------------------------------------------------
@@ -194,8 +379,14 @@ public class PheromoneProtocol implements Protocol, Linkable {
     public void onKill() {
         neighbors = null;
         len = 0;
-        pherTable.clear();
-        queryHitCount.clear();
+        pherTable = null;
+        pherTotal = 0.0;
+        queryHitCount = null;
+        fenwick = null;
+        sampleWeight = null;
+        drawn = null;
+        drawnWeight = null;
+        sampleValid = false;
     }
 
     @Override
@@ -226,25 +417,27 @@ public class PheromoneProtocol implements Protocol, Linkable {
                 return false;
         }
         
-        // If neighbors list has reached max capacity, resize list
+        // If neighbors list has reached max capacity, resize all tables
         if (len == neighbors.length) {
-            Node[] temp = new Node[3 * neighbors.length / 2];
-            System.arraycopy(neighbors, 0, temp, 0, neighbors.length);
-            neighbors = temp;
+            resize(Math.max(3 * neighbors.length / 2, len + 1));
         }
 
         // Add neighbor to list
         neighbors[len] = neighbor;
 
-        // Give neighbor random pheromone value 
-        // HashMap dynamically resizes itself
-        pherTable.put(neighbor, random.nextDouble());
-        normalizePherTable();
+        // Give neighbor random pheromone value, relative to the normalized
+        // table as in the paper, hence scaled by the current total
+        double weight = CommonState.r.nextDouble();
+        if (len > 0) { weight *= pherTotal / evaporate(); }
+        pherTable[len] = weight;
+        pherTotal += weight;
 
         // Initialize query hit count as 0
-        queryHitCount.put(neighbor, 0);
+        queryHitCount[len] = 0;
 
         len++; // Update current neighbor count
+        sampleValid = false;
+        checkTotal();
 
         return true;
     }
@@ -252,19 +445,37 @@ public class PheromoneProtocol implements Protocol, Linkable {
     /** Does neighbor exist? */
     @Override
     public boolean contains(Node neighbor) {
+        return indexOf(neighbor) >= 0;
+    }
+
+    /** Slot of neighbor in neighbors (and in the tables), -1 if absent */
+    public int indexOf(Node neighbor) {
         for (int i = 0; i < len; i++) {
             if (neighbors[i] == neighbor)
-                return true;
+                return i;
         }
-        return false;
+        return -1;
     }
 
     @Override
     public void pack() {
         if (len == neighbors.length) { return; }
-	    Node[] temp = new Node[len];
-	    System.arraycopy(neighbors, 0, temp, 0, len);
-	    neighbors = temp;
+        resize(len);
+    }
+
+    /** Resize neighbors and the parallel tables, keeping the first len slots */
+    private void resize(int capacity) {
+        Node[] tempNeighbors = new Node[capacity];
+        System.arraycopy(neighbors, 0, tempNeighbors, 0, len);
+        neighbors = tempNeighbors;
+
+        double[] tempPher = new double[capacity];
+        System.arraycopy(pherTable, 0, tempPher, 0, len);
+        pherTable = tempPher;
+
+        int[] tempHits = new int[capacity];
+        System.arraycopy(queryHitCount, 0, tempHits, 0, len);
+        queryHitCount = tempHits;
     }
 
     @Override
@@ -296,9 +507,9 @@ public class PheromoneProtocol implements Protocol, Linkable {
 	    pp.len = len;
 
         // Clone resources table, but randomize
-        pp.resources = new ArrayList<>();
+        pp.resources = newResourceStore();
 
-        int resource_capacity = random.nextInt(MAX_RES_CAPACITY - MIN_RES_CAPACITY + 1) + MIN_RES_CAPACITY;
+        int resource_capacity = CommonState.r.nextInt(MAX_RES_CAPACITY - MIN_RES_CAPACITY + 1) + MIN_RES_CAPACITY;
 
         // Initialize resources
         for (int i = 0; i < resource_capacity; i++) {
@@ -306,16 +517,19 @@ public class PheromoneProtocol implements Protocol, Linkable {
         }
 
         // Clone pheromone table
-        pp.pherTable = new HashMap<Node, Double>();
-        for (Map.Entry<Node, Double> entry : this.pherTable.entrySet()) {
-            pp.pherTable.put(entry.getKey(), entry.getValue());
-        }
+        pp.pherTable = new double[pherTable.length];
+        System.arraycopy(pherTable, 0, pp.pherTable, 0, len);
 
         // Clone query hit count table
-        pp.queryHitCount = new HashMap<Node, Integer>();
-        for (Map.Entry<Node, Integer> entry : this.queryHitCount.entrySet()) {
-            pp.queryHitCount.put(entry.getKey(), entry.getValue());
-        }
+        pp.queryHitCount = new int[queryHitCount.length];
+        System.arraycopy(queryHitCount, 0, pp.queryHitCount, 0, len);
+
+        // Sampler is rebuilt on first use
+        pp.fenwick = null;
+        pp.sampleWeight = null;
+        pp.drawn = null;
+        pp.drawnWeight = null;
+        pp.sampleValid = false;
         
 	    return pp;
     }
@@ -326,8 +540,11 @@ public class PheromoneProtocol implements Protocol, Linkable {
     // ----------------------------------------------------------
 
 
+    private static ResourceStore newResourceStore() {
+        return ResourceStore.create(POSSIBLE_RESOURCES, MAX_RES_CAPACITY);
+    }
+
     public static int nextRandomResource() {
-        Random random = new Random();
-        return random.nextInt(POSSIBLE_RESOURCES);
+        return CommonState.r.nextInt(POSSIBLE_RESOURCES);
     }
 }
\ No newline at end of file
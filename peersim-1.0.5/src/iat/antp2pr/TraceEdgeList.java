@@ -0,0 +1,56 @@
+package iat.antp2pr;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import peersim.graph.GraphIO;
+import peersim.graph.NeighbourListGraph;
+
+/**
+ * Converts a binary ant trace into the edge list format written by
+ * {@link GraphIO#writeEdgeList}: one "from to" line per directed edge
+ * traveled by any ant, each edge once. Node IDs are used as graph indices.
+ * Replaces the regex over log.txt in vis/test.py, e.g.
+ * java -cp peersim.jar iat.antp2pr.TraceEdgeList log.bin > edges.txt
+ */
+public class TraceEdgeList {
+
+    private TraceEdgeList() {}
+
+    /** Builds the directed graph of all hops in the trace */
+    public static NeighbourListGraph readGraph(String fname) throws IOException {
+        // First pass: largest ID, so that every ID maps to the same index
+        long maxId = -1;
+        try (TraceReader reader = new TraceReader(fname)) {
+            while (reader.next()) {
+                for (int i = 0; i < reader.getPathSize(); i++) {
+                    maxId = Math.max(maxId, reader.getPathNode(i));
+                }
+            }
+        }
+
+        NeighbourListGraph graph = new NeighbourListGraph((int) (maxId + 1), true);
+
+        // Second pass: consecutive path nodes are edges
+        try (TraceReader reader = new TraceReader(fname)) {
+            while (reader.next()) {
+                for (int i = 1; i < reader.getPathSize(); i++) {
+                    graph.setEdge((int) reader.getPathNode(i - 1), (int) reader.getPathNode(i));
+                }
+            }
+        }
+        return graph;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: TraceEdgeList <binary trace> [output file]");
+            System.exit(1);
+        }
+
+        PrintStream out = args.length == 2 ? new PrintStream(args[1]) : System.out;
+        GraphIO.writeEdgeList(readGraph(args[0]), out);
+        out.flush();
+        if (out != System.out) { out.close(); }
+    }
+}
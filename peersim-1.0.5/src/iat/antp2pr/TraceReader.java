@@ -0,0 +1,188 @@
+package iat.antp2pr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streams the records of a binary ant trace (see {@link AntTraceCodec})
+ * through a memory-mapped window that slides over the file, so traces
+ * larger than memory (or than 2 GB) are read without copying. Fields of
+ * the current record are exposed through getters and are overwritten by
+ * the next call to {@link #next()}:
+ * 
+ * try (TraceReader reader = new TraceReader("log.bin")) {
+ *     while (reader.next()) { ... reader.getPathNode(i) ... }
+ * }
+ * 
+ * A truncated last record (e.g. a run killed before flushing), even one
+ * cut inside its length prefix, ends the stream silently; only bad data
+ * inside a complete record is reported as corrupt.
+ */
+public class TraceReader implements Closeable {
+
+    // Size of the mapped window, records larger than this get their own
+    private static final long WINDOW_SIZE = 64L << 20;
+    // Longest possible varint
+    private static final int MAX_VARINT = 10;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    // File offset of the first byte of window
+    private long base;
+    private MappedByteBuffer window;
+
+    // Current record
+    private long source;
+    private int content;
+    private int ttl;
+    private int hitCount;
+    private int pathSize;
+    private long[] path = new long[16];
+
+    // Constructor
+    public TraceReader(String fname) throws IOException {
+        file = new RandomAccessFile(fname, "r");
+        channel = file.getChannel();
+        fileSize = channel.size();
+
+        map(0, 0);
+        byte[] magic = new byte[AntTraceCodec.MAGIC.length];
+        if (fileSize < AntTraceCodec.HEADER_LENGTH) {
+            close();
+            throw new IOException(fname + " is not an ant trace (too short)");
+        }
+        window.get(magic);
+        int version = window.get() & 0xFF;
+        if (!Arrays.equals(magic, AntTraceCodec.MAGIC) || version != AntTraceCodec.VERSION) {
+            close();
+            throw new IOException(fname + " is not a version " + AntTraceCodec.VERSION + " ant trace");
+        }
+    }
+
+    // ----------------------------------------------------------
+    // Reading
+    // ----------------------------------------------------------
+
+    /** Moves to the next record, false once the trace is exhausted */
+    public boolean next() throws IOException {
+        long length = getLength();
+        if (length < 0) { return false; } // exhausted, or truncated inside the length
+        if (length > Integer.MAX_VALUE) { throw corrupt(); }
+        if (!available((int) length)) { return false; } // truncated
+
+        int end = window.position() + (int) length;
+        source = getVarint();
+        content = (int) getVarint();
+        ttl = (int) AntTraceCodec.unzigzag(getVarint());
+        hitCount = (int) getVarint();
+        pathSize = (int) getVarint();
+        if (pathSize > path.length) {
+            path = new long[Math.max(pathSize, 2 * path.length)];
+        }
+        for (int i = 0; i < pathSize; i++) {
+            path[i] = getVarint();
+        }
+
+        if (window.position() > end) { throw corrupt(); } // fields overran the record
+        window.position(end); // skip fields added by later versions
+        return true;
+    }
+
+    public long getSource() {
+        return source;
+    }
+
+    public int getContent() {
+        return content;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getPathSize() {
+        return pathSize;
+    }
+
+    /** ID of the i-th node traveled by the current record */
+    public long getPathNode(int i) {
+        return path[i];
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /**
+     * Makes sure the next n bytes are inside the window, sliding it if
+     * needed. False if the file ends before that.
+     */
+    private boolean available(int n) throws IOException {
+        if (window.remaining() >= n) { return true; }
+
+        long offset = base + window.position();
+        if (offset + n > fileSize) {
+            // Not enough bytes left in the file, map what is there
+            if (offset + window.remaining() < fileSize) { map(offset, n); }
+            return false;
+        }
+        map(offset, n);
+        return true;
+    }
+
+    /** Maps a window starting at offset holding at least n bytes (file permitting) */
+    private void map(long offset, int n) throws IOException {
+        long size = Math.min(Math.max(WINDOW_SIZE, n), fileSize - offset);
+        base = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    /**
+     * Reads the length prefix of the next record, or returns -1 if the file
+     * ends before the prefix does (no more records, or a run killed while
+     * writing it).
+     */
+    private long getLength() throws IOException {
+        if (!available(MAX_VARINT)) {
+            // Last bytes of the file, mapped by available: the prefix is
+            // complete only if one of them ends a varint
+            int i = window.position();
+            while (i < window.limit() && (window.get(i) & 0x80) != 0) { i++; }
+            if (i == window.limit()) { return -1; }
+        }
+        return getVarint();
+    }
+
+    private IOException corrupt() {
+        return new IOException("Corrupt ant trace at offset " + (base + window.position()));
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (!window.hasRemaining() || shift >= 64) { throw corrupt(); }
+            b = window.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
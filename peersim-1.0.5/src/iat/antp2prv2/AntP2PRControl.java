@@ -1,18 +1,19 @@
 package iat.antp2prv2;
 
-import java.util.Random;
-
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Control;
+import peersim.core.Log;
 import peersim.core.Network;
 import peersim.core.Node;
 
 public class AntP2PRControl implements Control {
     private final int pid;
+    private final Log log;
 
     public AntP2PRControl(String prefix) {
         pid = Configuration.getPid(prefix + ".protocol");
+        log = Log.get(prefix);
     }
 
     
@@ -27,10 +28,10 @@ public class AntP2PRControl implements Control {
         int startIndex = CommonState.r.nextInt(size);
         Node startNode = Network.get(startIndex);
 
-        System.out.println("Starting search from node " + startNode.getIndex());
+        if (log.isInfo()) log.info("Starting search from node " + startNode.getIndex());
 
         AntP2PRProtocol protocol = (AntP2PRProtocol) startNode.getProtocol(pid);
-        protocol.startAntSearch(startNode, new Random().nextInt(Network.size()), pid); 
+        protocol.startAntSearch(startNode, CommonState.r.nextInt(Network.size()), pid); 
 
         return false;
     }
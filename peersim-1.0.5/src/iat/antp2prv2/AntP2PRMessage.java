@@ -1,6 +1,6 @@
 package iat.antp2prv2;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -11,7 +11,9 @@ public class AntP2PRMessage {
     private double pheromoneLevel;
     private int ttl;
     private int hitCount;
-    private List<Integer> path; 
+    // Node indexes visited, in order, in the first pathSize slots
+    private int[] path;
+    private int pathSize;
 
     public AntP2PRMessage(int source, int content, double initialPheromone, int ttl) {
         this.source = source;
@@ -19,7 +21,8 @@ public class AntP2PRMessage {
         this.pheromoneLevel = initialPheromone;
         this.ttl = ttl;
         this.hitCount = 0;
-        this.path = new ArrayList<Integer>();
+        this.path = new int[8];
+        this.pathSize = 0;
     }
 
     // Getter for source
@@ -65,11 +68,34 @@ public class AntP2PRMessage {
 
     // Method for path (formerly routeHistory)
     public void addToPath(int nodeId) {
-        path.add(nodeId);
+        if (pathSize == path.length) {
+            path = Arrays.copyOf(path, 2 * path.length);
+        }
+        path[pathSize++] = nodeId;
     }
 
+    // Copy of the path, allocates: not for per-event use
     public List<Integer> getPath() {
-        return new LinkedList<>(path);
+        List<Integer> copy = new LinkedList<>();
+        for (int i = 0; i < pathSize; i++) {
+            copy.add(path[i]);
+        }
+        return copy;
+    }
+
+    // Whether the ant already visited the node with this index, without copying
+    public boolean inPath(int index) {
+        for (int i = 0; i < pathSize; i++) {
+            if (path[i] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Index of the node before the last one on the path, -1 if there is none
+    public int getPreviousIndex() {
+        return pathSize < 2 ? -1 : path[pathSize - 2];
     }
 
     // Define the isHit method
@@ -79,10 +105,10 @@ public class AntP2PRMessage {
 
     // Define the getPreviousNodeIndex method
     public Integer getPreviousNodeIndex() {
-        if (path.isEmpty()) {
+        if (pathSize == 0) {
             return null;
         } else {
-            return path.get(path.size() - 1);
+            return path[pathSize - 1];
         }
     }
 
@@ -90,7 +116,8 @@ public class AntP2PRMessage {
     public AntP2PRMessage replicateForForwarding() {
         AntP2PRMessage replicatedAnt = new AntP2PRMessage(this.source, this.content, this.pheromoneLevel, this.ttl);
         replicatedAnt.hitCount = this.hitCount;
-        replicatedAnt.path = new ArrayList<>(path);// Deep copy of path
+        replicatedAnt.path = Arrays.copyOf(path, path.length);// Deep copy of path
+        replicatedAnt.pathSize = this.pathSize;
         return replicatedAnt;
     }
 
@@ -102,7 +129,7 @@ public class AntP2PRMessage {
                 ", pheromoneLevel=" + pheromoneLevel +
                 ", ttl=" + ttl +
                 ", hitCount=" + hitCount +
-                ", path=" + path +
+                ", path=" + Arrays.toString(Arrays.copyOf(path, pathSize)) +
                 '}';
     }
 }
@@ -0,0 +1,43 @@
+package iat.antp2prv2;
+
+import peersim.config.Configuration;
+
+/**
+ * Parameters of AntP2PRProtocol, resolved once from the configuration by
+ * the prototype. Immutable, so every clone shares the same instance and
+ * nothing is looked up in Configuration on the event path.
+ *
+ * protocol.antp2pr.transport tr
+ * protocol.antp2pr.alpha 1.0
+ * protocol.antp2pr.q1 60
+ * protocol.antp2pr.q2 -0.075
+ * protocol.antp2pr.low 0.4
+ * protocol.antp2pr.high 0.8
+ * simulation.initialTTL 2
+ */
+public final class AntP2PRParams {
+    // Constants
+    private static final String PAR_TRANSPORT = ".transport";
+    private static final String PAR_ALPHA = ".alpha";
+    private static final String PAR_Q1 = ".q1";
+    private static final String PAR_Q2 = ".q2";
+    private static final String PAR_LOW = ".low";
+    private static final String PAR_HIGH = ".high";
+    private static final String PAR_INITIAL_TTL = "simulation.initialTTL";
+
+    public final int transportPid; // Transport layer ID
+    public final double alpha; // Importance of the pheromone trail
+    public final double q1, q2; // Aggressiveness of pheromone updates
+    public final double lowerBound, upperBound; // Pheromone thresholds for TTL changes
+    public final int initialTTL; // TTL of new ants
+
+    public AntP2PRParams(String prefix) {
+        this.transportPid = Configuration.getPid(prefix + PAR_TRANSPORT);
+        this.alpha = Configuration.getDouble(prefix + PAR_ALPHA, 1.0);
+        this.q1 = Configuration.getDouble(prefix + PAR_Q1, 60);
+        this.q2 = Configuration.getDouble(prefix + PAR_Q2, -0.075);
+        this.lowerBound = Configuration.getDouble(prefix + PAR_LOW, 0.4);
+        this.upperBound = Configuration.getDouble(prefix + PAR_HIGH, 0.8);
+        this.initialTTL = Configuration.getInt(PAR_INITIAL_TTL, 2);
+    }
+}
@@ -1,79 +1,90 @@
 package iat.antp2prv2;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.stream.IntStream;
-
-import example.dlant.AntMessage;
-import peersim.config.Configuration;
+import java.util.Arrays;
+
+import iat.resource.ResourceHolder;
+import iat.resource.ResourceStore;
+import peersim.core.CommonState;
 import peersim.core.IdleProtocol;
 import peersim.core.Linkable;
+import peersim.core.Log;
 import peersim.core.Network;
 import peersim.core.Node;
 import peersim.edsim.EDProtocol;
 import peersim.edsim.EDSimulator;
 import peersim.transport.Transport;
 
-public class AntP2PRProtocol extends IdleProtocol implements EDProtocol {
-     // Constants
-    private static final String PAR_TRANSPORT = ".transport";
-    private static final String PAR_ALPHA = ".alpha";
-
-    private String prefix;
-
-    // Pheromone-related parameters
-    private final double alpha; // Importance of the pheromone trail
-    private final int transportPid; // Transport layer ID
-
+public class AntP2PRProtocol extends IdleProtocol implements EDProtocol, ResourceHolder {
+    // Parameters, resolved once by the prototype and shared by all clones
+    private final AntP2PRParams params;
+    private final Log log;
 
-    private final Map<Long, Double> pherTables;
-    private final Map<Long, Integer> queryHitCounts;
-    private final List<Integer> resources;
-
-    
+    // Parallel to the IdleProtocol neighbor list: slot i belongs to neighbors[i]
+    private double[] pherTable;
+    private int[] queryHitCount;
+    private ResourceStore resources;
 
     // Constructor that initializes the protocol's parameters
     public AntP2PRProtocol(String prefix) {
         super(prefix);
 
-        this.prefix = prefix;
-
-        this.transportPid = Configuration.getPid(prefix + PAR_TRANSPORT);
-        this.alpha = Configuration.getDouble(prefix + PAR_ALPHA, 1.0);
+        this.params = new AntP2PRParams(prefix);
+        this.log = Log.get(prefix);
 
-        this.pherTables = new HashMap<>();
-        this.queryHitCounts = new HashMap<>();
-        this.resources = new ArrayList<>();
+        this.pherTable = new double[neighbors.length];
+        this.queryHitCount = new int[neighbors.length];
+        this.resources = randomResources();
+    }
 
-        Random rand = new Random();
+    /** Up to 2 random resources out of [0, network size) */
+    private static ResourceStore randomResources() {
+        int numResources = CommonState.r.nextInt(3);
 
-        int numResources = rand.nextInt(3);
+        ResourceStore store = ResourceStore.create(Network.size(), numResources);
 
         for (int i = 0; i < numResources; i++) {
-            int resource = rand.nextInt(Network.size());
-
-            if (!resources.contains(resource)) {
-                resources.add(rand.nextInt(Network.size()));
-            }
+            // duplicates are ignored by the store
+            store.add(CommonState.r.nextInt(Network.size()));
         }
+        return store;
     }
 
     public boolean addNeighbor(Node n) {
-        this.pherTables.put(n.getID(), 1.0);
-        this.queryHitCounts.put(n.getID(), 0);
+        if (!super.addNeighbor(n)) {
+            return false;
+        }
+
+        // IdleProtocol may have grown neighbors, keep the tables parallel
+        if (pherTable.length < neighbors.length) {
+            pherTable = Arrays.copyOf(pherTable, neighbors.length);
+            queryHitCount = Arrays.copyOf(queryHitCount, neighbors.length);
+        }
+        pherTable[len - 1] = 1.0;
+        queryHitCount[len - 1] = 0;
+        return true;
+    }
 
-        return super.addNeighbor(n);
+    /** Slot of neighbor in the neighbor list (and in the tables), -1 if absent */
+    private int indexOf(Node neighbor) {
+        for (int i = 0; i < len; i++) {
+            if (neighbors[i] == neighbor) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public boolean hasResource(int resource) {
         return resources.contains(resource);
     }
 
+    @Override
+    public ResourceStore getResourceStore() {
+        return resources;
+    }
+
     public void startAntSearch(Node startNode, int objectToSearch, int pid) {
-        AntP2PRMessage msg = new AntP2PRMessage(startNode.getIndex(), objectToSearch, alpha, calculateInitialTTL());
+        AntP2PRMessage msg = new AntP2PRMessage(startNode.getIndex(), objectToSearch, params.alpha, params.initialTTL);
 
         EDSimulator.add(0, msg, startNode, pid);
     }
@@ -83,21 +94,27 @@ public class AntP2PRProtocol extends IdleProtocol implements EDProtocol {
             AntP2PRMessage msg = (AntP2PRMessage) event;
 
             // Skip if the node has already been visited
-            if (msg.getPath().contains(node.getIndex())) {
+            if (msg.inPath(node.getIndex())) {
                 return;
             }
 
 
             msg.addToPath(node.getIndex());
             
-            System.out.println(msg);
+            if (log.isDebug()) log.debug(msg.toString());
 
             // Check if this node has the resource
             if (this.hasResource(msg.getContent())) {
                 msg.incrementHitCount();
 
-                // Add to the query hit count
-                queryHitCounts.merge(node.getID(), 1, (oldValue, newValue) -> oldValue + newValue);
+                // Add to the query hit count of the neighbor the ant came from
+                int previous = msg.getPreviousIndex();
+                if (previous >= 0) {
+                    int slot = indexOf(Network.get(previous));
+                    if (slot >= 0) {
+                        queryHitCount[slot]++;
+                    }
+                }
 
                 // Update pheromone levels
                 update();
@@ -109,62 +126,61 @@ public class AntP2PRProtocol extends IdleProtocol implements EDProtocol {
     }
 
     private void update() {
-        if (this.degree() > 0) {
-            IntStream.range(0, this.degree()).forEach(i -> {
-                Node neighbor = this.getNeighbor(i);
-
-                double pherValue = pherTables.getOrDefault(neighbor.getID(), 1.0);
-                double qh = queryHitCounts.getOrDefault(neighbor.getID(), 0);
-
-                double q1 = 60;
-                double q2 = -0.075;
+        if (len == 0) {
+            return;
+        }
 
-                double delta = q1 * Math.exp(q2 * qh);
+        double q1 = params.q1;
+        double q2 = params.q2;
 
-                pherTables.put(neighbor.getID(), pherValue + delta);
-            });
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            double delta = q1 * Math.exp(q2 * queryHitCount[i]);
 
-            int sum = pherTables.values().stream().mapToInt(Double::intValue).sum();
+            pherTable[i] += delta;
+            sum += pherTable[i];
+        }
 
-            // Normalize pheromone levels
-            pherTables.forEach((key, value) -> pherTables.put(key, value / sum));
+        // Normalize pheromone levels
+        for (int i = 0; i < len; i++) {
+            pherTable[i] /= sum;
         }
     }
 
     private void forward(AntP2PRMessage msg, Node currentNode, int pid) {
-        if (this.degree() > 0) {
-            IntStream.range(0, this.degree()).forEach(i -> {
-                Node neighbor = this.getNeighbor(i);
-                AntP2PRMessage newMsg = msg.replicateForForwarding();
-
-                double pherValue = pherTables.getOrDefault(neighbor.getID(), 0.0);
-
-                System.out.println("Current (" + currentNode.getID() + ")  Pheromone value: " + pherValue + " for node " + neighbor.getID());
-                System.out.println(pherTables);
-                
-                double lowerBound = 0.4;
-                double upperBound = 0.8;
-
-                if (pherValue < lowerBound) {
-                    newMsg.setTtl(newMsg.getTtl() - 1);
-                } else if (pherValue > upperBound) {
-                    newMsg.setTtl(newMsg.getTtl() + 1);
-                }
+        double lowerBound = params.lowerBound;
+        double upperBound = params.upperBound;
+        Transport transport = (Transport) currentNode.getProtocol(params.transportPid);
 
-                if (newMsg.getTtl() > 0) {
-                    Transport transport = (Transport) currentNode.getProtocol(transportPid);
+        for (int i = 0; i < len; i++) {
+            Node neighbor = neighbors[i];
+            AntP2PRMessage newMsg = msg.replicateForForwarding();
 
-                    transport.send(currentNode, neighbor, newMsg, pid);
-                }
-            });
-        }
-    }
+            double pherValue = pherTable[i];
 
-    private int calculateInitialTTL() {
-        return Configuration.getInt("simulation.initialTTL", 2);
+            if (log.isTrace()) log.trace("Current (" + currentNode.getID() + ")  Pheromone value: " + pherValue + " for node " + neighbor.getID());
+
+            if (pherValue < lowerBound) {
+                newMsg.setTtl(newMsg.getTtl() - 1);
+            } else if (pherValue > upperBound) {
+                newMsg.setTtl(newMsg.getTtl() + 1);
+            }
+
+            if (newMsg.getTtl() > 0) {
+                transport.send(currentNode, neighbor, newMsg, pid);
+            }
+        }
     }
 
+    /**
+     * Copies the prototype without touching Configuration: params are
+     * shared, the tables start empty and resources are drawn anew.
+     */
     public Object clone() {
-        return new AntP2PRProtocol(prefix);
+        AntP2PRProtocol ap = (AntP2PRProtocol) super.clone();
+        ap.pherTable = new double[ap.neighbors.length];
+        ap.queryHitCount = new int[ap.neighbors.length];
+        ap.resources = randomResources();
+        return ap;
     }
 }
@@ -10,14 +10,19 @@ public class FloodingControl implements Control {
 
     // Constant string used as key, specifies protocol parameter
     private static final String PAR_PROTO = "protocol";
+    private static final String PAR_TTL = "ttl"; // optional, default 5
 
     // ID of FloodingProtocol
     private final int pid;
+
+    // Time to live for messages
+    private final int ttl;
     
     // Constructor
     public FloodingControl(String prefix) {
         // No FastConfig here
         pid = Configuration.getPid(prefix + "." + PAR_PROTO);
+        ttl = Configuration.getInt(prefix + "." + PAR_TTL, 5);
     }
 
     /**
@@ -28,10 +33,7 @@ public class FloodingControl implements Control {
     public boolean execute() {
         // Trigger the flooding protocol from a random node
         Node randSrc = Network.get(CommonState.r.nextInt(Network.size()));
-        // Time to live for messages
-        int ttl = 5; 
-        
-        Message msg = new Message(randSrc, randSrc, "Hello from " + randSrc.getID(), ttl);
+        Message msg = new Message(randSrc, "Hello from " + randSrc.getID(), ttl);
         ((FloodingProtocol) randSrc.getProtocol(pid)).floodMessage(randSrc, pid, msg);
         // Schedule the flooding event to occur
         // EDSimulator.add(interval, msg, randSrc, pid);
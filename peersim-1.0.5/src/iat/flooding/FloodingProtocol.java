@@ -1,26 +1,79 @@
 package iat.flooding;
 
+import java.util.Arrays;
+
 import peersim.cdsim.CDProtocol;
+import peersim.cdsim.CDState;
+import peersim.config.Configuration;
 import peersim.config.FastConfig;
+import peersim.core.CommonState;
 import peersim.core.Linkable;
+import peersim.core.Log;
 import peersim.core.Node;
 import peersim.edsim.EDProtocol;
 import peersim.transport.Transport;
+import peersim.util.SeenCache;
 import peersim.vector.SingleValueHolder;
 
 /**
  * This class provides an implementation for the flooding protocol.
  * FloodingProtocol will be contained in each node. 
- * Purely Event-Driven so far. 
+ * Runs under both simulators: event-driven, messages travel through the
+ * transport as events; cycle-driven, they go straight into the peer's
+ * double-buffered inbox and are processed in its next cycle.
+ * Each node forwards a flood at most once: it remembers the flood IDs it
+ * has seen in a bounded cache whose entries expire once no copy of the
+ * flood can still be in flight (the flood's initial TTL in hops of at
+ * most hopdelay each, read from the message), so a flood costs O(edges)
+ * messages.
  */
 public class FloodingProtocol extends SingleValueHolder implements CDProtocol, EDProtocol {
     
     private static final String PAR_LINKABLE = "linkable";
     private static final String PAR_TRANSPORT = "transport";
+    private static final String PAR_HOPDELAY = "hopdelay"; // optional, largest one-hop latency, default 1
+    private static final String PAR_SEEN = "seen"; // optional, seen-flood cache capacity, default 32
+
+    private static final int INITIAL_INBOX = 4;
+
+    // Flood IDs this node has already forwarded
+    private SeenCache seen;
+
+    // Largest one-hop latency
+    private final long hopDelay;
+
+    // Shared by all clones: sends are traced, receives debugged
+    private final Log log;
+
+    // Messages this node received
+    private long received = 0;
+
+    // Cycle-driven inbox: pending holds the messages that arrived in
+    // earlier cycles, arriving the ones that arrived in arrivingTime, so
+    // messages sent in cycle t are processed in cycle t + 1
+    private Message[] pending = new Message[INITIAL_INBOX];
+    private int pendingCount = 0;
+    private Message[] arriving = new Message[INITIAL_INBOX];
+    private int arrivingCount = 0;
+    private long arrivingTime = -1;
 
     // Constructor
     public FloodingProtocol(String prefix) {
         super(prefix);
+        hopDelay = Math.max(Configuration.getLong(prefix + "." + PAR_HOPDELAY, 1), 1);
+        int capacity = Configuration.getInt(prefix + "." + PAR_SEEN, 32);
+        // Each entry gets the window of its own flood, see floodMessage
+        seen = new SeenCache(capacity, hopDelay);
+        log = Log.get(prefix);
+    }
+
+    @Override
+    public Object clone() {
+        FloodingProtocol fp = (FloodingProtocol) super.clone();
+        fp.seen = seen.copyEmpty();
+        fp.pending = new Message[INITIAL_INBOX];
+        fp.arriving = new Message[INITIAL_INBOX];
+        return fp;
     }
     
     /**
@@ -38,20 +91,26 @@ public class FloodingProtocol extends SingleValueHolder implements CDProtocol, E
         // Return if TTL expires
         if (message.getTtl() <= 0) { return; }
         
-        // Message has arrived at node, update as visited
-        message.updateVisited(node);
+        // Forward each flood once, drop later copies. All copies arrive
+        // within initialTtl hops of the flood's start, so no earlier than
+        // that from the first one
+        long window = message.getInitialTtl() * hopDelay;
+        if (!seen.add(message.getFloodId(), CommonState.getTime(), window)) { return; }
 
         // Obtain ID of linkable object used by a FloodingProtocol, then
         // obtain specific node linkable protocol, i.e. it's neighbors list
         Linkable linkable = (Linkable) node.getProtocol(FastConfig.getLinkable(protocolID));
 
         // Obtain source node that sent message to current node
-        // Node source = message.getSource();
-        // assert(message.getDestination().equals(node)); // SANITY CHECK - is message's destination truly current node?
+        Node source = message.getSource();
 
         // If node has neighbors
         if (linkable.degree() > 0) {
-            // Send message to all neighbors, except for nodes it has already visited
+            // Immutable, one copy goes to every neighbor
+            Message newMsg = message.forward(node);
+            boolean cycleDriven = CDState.isCD();
+
+            // Send message to all neighbors, except the one it came from
             for (int i = 0; i < linkable.degree(); i++) {
                 Node peer = linkable.getNeighbor(i);
 
@@ -59,25 +118,22 @@ public class FloodingProtocol extends SingleValueHolder implements CDProtocol, E
                 if (!peer.isUp()) { continue; }
 
                 // If peer is the one sending current node this message, continue
-                // if (peer.equals(source)) { continue; }
-
-                // If message has visited peer, continue
-                if (message.hasVisited(peer)) { continue; }
-
-                // Create copy of current message, update source and destination
-                Message newMsg = new Message(node, peer, message.getContent(), message.getTtl());
-                // Decrease TTL
-                newMsg.decreaseTtl();
-                
-                // Obtain transport protocol of peer
-                Transport transport = (Transport) peer.getProtocol(FastConfig.getTransport(protocolID));
-                // Send message to peer, ED Simulator listens to transport
-                transport.send(node, peer, newMsg, protocolID);
-
-                System.out.println("Node " + node.getID() + " sent message to node " + peer.getID() + ": " + newMsg.getContent());
+                if (peer == source) { continue; }
+
+                if (cycleDriven) {
+                    // Peer processes it in its next cycle
+                    ((FloodingProtocol) peer.getProtocol(protocolID)).deliver(newMsg);
+                } else {
+                    // Obtain transport protocol of peer
+                    Transport transport = (Transport) peer.getProtocol(FastConfig.getTransport(protocolID));
+                    // Send message to peer, ED Simulator listens to transport
+                    transport.send(node, peer, newMsg, protocolID);
+                }
+
+                if (log.isTrace()) log.trace("Node " + node.getID() + " sent message to node " + peer.getID() + ": " + newMsg.getContent());
             }
         }
-        else { System.out.println(node.getID() + " has no neighbors"); }
+        else if (log.isDebug()) { log.debug(node.getID() + " has no neighbors"); }
     }
 
     /**
@@ -94,24 +150,17 @@ public class FloodingProtocol extends SingleValueHolder implements CDProtocol, E
     @Override
     public void processEvent(Node node, int protocolID, Object event) {
         if (event instanceof Message) {
-            Message msg = (Message) event;
-            System.out.println("Node " + node.getID() + " received message: " + msg.getContent());
-
-            if (msg.getTtl() > 0) {
-                floodMessage(node, protocolID, msg);
-            }
+            receive(node, protocolID, (Message) event);
         } 
         else {
             // Handle other types of events if necessary
-            System.err.println("Unexpected event type: " + event.getClass().getName());
+            log.error("Unexpected event type: " + event.getClass().getName());
         }
     }
 
     /**
-     * WIP
      * Execute floodMessage() for Cycle-Driven simulations
-     * Needs "inbox" data structure to keep track all of the messages?
-     * Flooding probably easier to implement with Event-Driven mode
+     * Processes the messages that arrived before the current cycle
      * 
      * @param node
      *            the node on which this component is run.
@@ -120,10 +169,62 @@ public class FloodingProtocol extends SingleValueHolder implements CDProtocol, E
      */
     @Override
     public void nextCycle(Node node, int protocolID) {
-        // if (msg.getTtl() > 0) {
-            // floodMessage(node, protocolID, msg);
-        // }
-        return;
+        rollOver(CommonState.getTime());
+
+        // Linear pass, sends from here land in the peers' arriving
+        for (int i = 0; i < pendingCount; i++) {
+            Message msg = pending[i];
+            pending[i] = null;
+            receive(node, protocolID, msg);
+        }
+        pendingCount = 0;
+    }
+
+    // Messages this node received so far
+    public long getReceived() {
+        return received;
+    }
+
+    private void receive(Node node, int protocolID, Message msg) {
+        received++;
+        if (log.isDebug()) log.debug("Node " + node.getID() + " received message: " + msg.getContent());
+
+        if (msg.getTtl() > 0) {
+            floodMessage(node, protocolID, msg);
+        }
+    }
+
+    /** Queues msg for processing in the next cycle of this node */
+    private void deliver(Message msg) {
+        rollOver(CommonState.getTime());
+
+        if (arrivingCount == arriving.length) {
+            arriving = Arrays.copyOf(arriving, 2 * arriving.length);
+        }
+        arriving[arrivingCount++] = msg;
+    }
+
+    /** Moves messages that arrived before cycle now from arriving to pending */
+    private void rollOver(long now) {
+        if (arrivingTime == now) { return; }
+        arrivingTime = now;
+        if (arrivingCount == 0) { return; }
+
+        if (pendingCount == 0) {
+            // Swap the buffers
+            Message[] tmp = pending;
+            pending = arriving;
+            arriving = tmp;
+            pendingCount = arrivingCount;
+        } else {
+            if (pendingCount + arrivingCount > pending.length) {
+                pending = Arrays.copyOf(pending, 2 * (pendingCount + arrivingCount));
+            }
+            System.arraycopy(arriving, 0, pending, pendingCount, arrivingCount);
+            Arrays.fill(arriving, 0, arrivingCount, null);
+            pendingCount += arrivingCount;
+        }
+        arrivingCount = 0;
     }
 
 }
\ No newline at end of file
@@ -1,49 +1,65 @@
 package iat.flooding;
 
 import peersim.core.Node;
-import java.util.ArrayList;
 
+/**
+ * Immutable flood message. All copies of one flood share its flood ID,
+ * which nodes use to drop floods they already forwarded, so a message
+ * carries no visited list and one instance can go to every neighbor.
+ */
 public class Message {
+    private static int nextFloodId = 0;
+
+    private final int floodId;
+    private final Node origin;
     private final Node source;
-    private final Node destination;
     private final String content;
-    private int ttl;
-    private ArrayList<Node> visited;
+    private final int ttl;
+    private final int initialTtl; // TTL the flood started with
+
+    // Starts a new flood at origin
+    public Message(Node origin, String content, int ttl) {
+        this(nextFloodId++, origin, origin, content, ttl, ttl);
+    }
 
-    public Message(Node source, Node destination, String content, int ttl) {
+    private Message(int floodId, Node origin, Node source, String content, int ttl, int initialTtl) {
+        this.floodId = floodId;
+        this.origin = origin;
         this.source = source;
-        this.destination = destination;
         this.content = content;
         this.ttl = ttl;
-        this.visited = new ArrayList<Node>();
+        this.initialTtl = initialTtl;
     }
 
-    public Node getSource() {
-        return source;
+    /** Copy of this message sent on by node, with the TTL decreased */
+    public Message forward(Node node) {
+        return new Message(floodId, origin, node, content, ttl - 1, initialTtl);
     }
 
-    public Node getDestination() {
-        return destination;
+    public int getFloodId() {
+        return floodId;
     }
 
-    public String getContent() {
-        return content;
+    public Node getOrigin() {
+        return origin;
     }
 
-    public int getTtl() {
-        return ttl;
+    // Node that sent this copy
+    public Node getSource() {
+        return source;
     }
 
-    public void decreaseTtl() {
-        ttl--;
+    public String getContent() {
+        return content;
     }
 
-    public boolean hasVisited(Node node) {
-        return visited.contains(node);
+    public int getTtl() {
+        return ttl;
     }
 
-    public void updateVisited(Node node) {
-        visited.add(node);
+    // Hops the flood could travel from its origin
+    public int getInitialTtl() {
+        return initialTtl;
     }
 
 }
@@ -1,16 +1,55 @@
 package iat.randomwalker;
 
+import java.util.Collections;
+
+import iat.search.QueryPayload;
 import iat.search.SMessage;
 import iat.search.SearchProtocol;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Node;
 
+/**
+ * k-walker random walk search. Each hop picks the next node in O(1) over
+ * the neighbor list, by one of the walk strategies:
+ * uniform - a uniformly random neighbor;
+ * mh - Metropolis-Hastings: a random neighbor j is accepted with
+ *      probability min(1, degree(i) / degree(j)), else the walker stays
+ *      one hop at i, which makes the walk visit nodes uniformly instead
+ *      of in proportion to their degree;
+ * selfavoid - a random neighbor not in the walker's visited filter, if
+ *      one is found within a few draws.
+ * With checkback k, a walker stops on a hit, and every k hops asks the
+ * originator whether the query was already answered, stopping if so.
+ * The check-back is an oracle: the originator's hitTable is read
+ * directly, without delay, but it is charged as the two messages
+ * (request and reply) it would take, so sent stays comparable.
+ */
 public class RWProtocol extends SearchProtocol {
     public static final String PAR_WALKERS = "walkers";
+    public static final String PAR_WALKER = "walker"; // old name of walkers, still read
     public static final String PAR_ANDMATCH = "andmatch";
     public static final String PAR_TTL = "ttl";
+    public static final String PAR_WALK = "walk"; // uniform (default), mh or selfavoid
+    public static final String PAR_CHECKBACK = "checkback"; // hops between check-backs, 0 (default) never
+
+    private static final int UNIFORM = 0;
+    private static final int MH = 1;
+    private static final int SELF_AVOID = 2;
+
+    // Draws before a self-avoiding walker settles for a visited neighbor
+    private static final int AVOID_TRIES = 4;
 
     protected int walkers;
+    protected int walk;
+    protected int checkBack;
+
+    // Node this protocol runs on, set each cycle for process()
+    private Node current;
+
+    // Scratch for startWalkers, shared by all clones (single-threaded)
+    private int[] slots = new int[0];
 
     public RWProtocol(String prefix) {
         this(prefix, null);
@@ -19,38 +58,122 @@ public class RWProtocol extends SearchProtocol {
     public RWProtocol(String prefix, Object obj) {
         super(prefix, obj);
 
-        int match= peersim.config.Configuration.getInt(prefix+"."+ PAR_ANDMATCH, 0);
+        int match= Configuration.getInt(prefix+"."+ PAR_ANDMATCH, 0);
 
         if (match == 1 ) this.andMatch = true;
         else this.andMatch = false;
 
-        this.walkers = peersim.config.Configuration.getInt(prefix+"."+ PAR_WALKERS, 1);
-        this.ttl = peersim.config.Configuration.getInt(prefix+"."+ PAR_TTL, 10);
+        this.walkers = Configuration.getInt(prefix+"."+ PAR_WALKERS,
+            Configuration.getInt(prefix+"."+ PAR_WALKER, 1));
+        this.ttl = Configuration.getInt(prefix+"."+ PAR_TTL, 10);
+        this.checkBack = Configuration.getInt(prefix+"."+ PAR_CHECKBACK, 0);
+
+        String w = Configuration.getString(prefix+"."+ PAR_WALK, "uniform");
+        if (w.equals("uniform")) this.walk = UNIFORM;
+        else if (w.equals("mh")) this.walk = MH;
+        else if (w.equals("selfavoid")) this.walk = SELF_AVOID;
+        else throw new IllegalParameterException(prefix+"."+ PAR_WALK,
+            "Unknown walk " + w + ", must be uniform, mh or selfavoid");
     }
 
     public void process(SMessage mes, int protocolId) { // "Passive" behaviour implementation
+        mes.markVisited(this.current.getIndex());
+
         // checks for hits and notifies originator if any:
         boolean match = this.match(mes.payload);
-        
+
         if (match) this.notifyOriginator(mes, protocolId);
 
+        if (this.checkBack > 0) {
+            // a walker that found it is done, the others learn at check-back
+            if (match) return;
+            if (mes.hops % this.checkBack == 0 && answered(mes, protocolId)) return;
+        }
 
-        // forwards the message to a random neighbor:
-        Node neighbor = (Node) this.view.get(CommonState.r.nextInt(degree()));
+        if (degree() == 0) return;
 
-        this.forward(neighbor, mes, protocolId);
+        // forwards the message to a neighbor picked by the walk strategy:
+        Node next = nextHop(mes, protocolId);
+        if (next == this.current) {
+            stay(mes);
+        } else {
+            this.forward(next, mes, protocolId);
+        }
+    }
+
+    /** Spends one hop of walker mes at this node, without a message */
+    private void stay(SMessage mes) {
+        if (mes.hops >= ttl) return;
+        try {
+            SMessage copy = (SMessage) mes.clone();
+            copy.hops++;
+            copy.type = SMessage.FWD;
+            this.deliver(copy);
+        } catch (CloneNotSupportedException cnse) {
+            log.error("Troubles with message cloning...!");
+        }
     }
 
     public void nextCycle(peersim.core.Node node, int protocolID) {
+        this.current = node;
         super.nextCycle(node, protocolID);
         // this will handle incoming messages
-        int[] data = this.pickQueryData(); // if we have to produce a query...
-
-        if (data != null) {
+        // produces the queries scheduled for this node now, if any
+        for (int e = this.firstQuery(node); e >= 0; e = this.schedule.next(e)) {
+            QueryPayload data = this.schedule.getPayload(e);
             SMessage m = new SMessage(node, SMessage.QRY, 0, data);
-            for (int i = 0; i < this.walkers && i < this.view.size() ; i++) {
-                this.send((Node) this.view.get(i), m, protocolID);
+            m.markVisited(node.getIndex());
+            startWalkers(m, protocolID);
+        }
+    }
+
+    /** Sends m to walkers distinct random neighbors, or to all if fewer */
+    private void startWalkers(SMessage m, int protocolID) {
+        int d = degree();
+        if (this.walkers >= d) {
+            for (int i = 0; i < d; i++) {
+                this.send(getNeighbor(i), m, protocolID);
+            }
+            return;
+        }
+
+        // Partial Fisher-Yates over neighbor slots, undone afterwards so
+        // the view keeps its order
+        if (this.slots.length < this.walkers) this.slots = new int[this.walkers];
+        int[] slots = this.slots;
+        for (int i = 0; i < this.walkers; i++) {
+            int j = i + CommonState.r.nextInt(d - i);
+            slots[i] = j;
+            Collections.swap(this.view, i, j);
+        }
+        for (int i = 0; i < this.walkers; i++) {
+            this.send(getNeighbor(i), m, protocolID);
+        }
+        for (int i = this.walkers - 1; i >= 0; i--) {
+            Collections.swap(this.view, i, slots[i]);
+        }
+    }
+
+    /** Next node of walker mes, possibly the current one (mh) */
+    private Node nextHop(SMessage mes, int protocolId) {
+        Node neighbor = getNeighbor(CommonState.r.nextInt(degree()));
+
+        if (this.walk == MH) {
+            int d = ((SearchProtocol) neighbor.getProtocol(protocolId)).degree();
+            if (d > degree() && CommonState.r.nextInt(d) >= degree()) {
+                return this.current; // rejected, stay
+            }
+        } else if (this.walk == SELF_AVOID) {
+            for (int i = 1; i < AVOID_TRIES && mes.mayHaveVisited(neighbor.getIndex()); i++) {
+                neighbor = getNeighbor(CommonState.r.nextInt(degree()));
             }
         }
+        return neighbor;
+    }
+
+    /** Check-back: whether the originator of mes already had a hit */
+    private boolean answered(SMessage mes, int protocolId) {
+        this.sent += 2; // request to the originator and its reply
+        return ((SearchProtocol) mes.originator.getProtocol(protocolId)).hitTable.contains(mes.seq);
     }
 }
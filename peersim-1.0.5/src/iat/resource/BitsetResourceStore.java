@@ -0,0 +1,122 @@
+package iat.resource;
+
+import java.util.Arrays;
+
+/**
+ * Resource store backed by a dense bitset, one bit per resource of the
+ * universe. Grows if a resource beyond the initial universe is added.
+ */
+public class BitsetResourceStore extends ResourceStore {
+
+    private long[] words;
+    private int size;
+
+    // Constructor
+    public BitsetResourceStore(int universe) {
+        words = new long[(Math.max(universe, 1) + 63) >>> 6];
+        size = 0;
+    }
+
+    @Override
+    public boolean add(int resource) {
+        checkResource(resource);
+
+        int w = resource >>> 6;
+        if (w >= words.length) {
+            words = Arrays.copyOf(words, Math.max(w + 1, 2 * words.length));
+        }
+
+        long bit = 1L << resource; // shift uses the low 6 bits only
+        if ((words[w] & bit) != 0) { return false; }
+
+        words[w] |= bit;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(int resource) {
+        int w = resource >>> 6;
+        return resource >= 0 && w < words.length && (words[w] & (1L << resource)) != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+        size = 0;
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] result = new int[size];
+        int k = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                result[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1; // clear lowest set bit
+            }
+        }
+        return result;
+    }
+
+    // ----------------------------------------------------------
+    // Matching
+    // ----------------------------------------------------------
+
+    /**
+     * Probes one bit per key, unless the keys outnumber the words: then
+     * walks the set bits and merges them with the keys instead.
+     */
+    @Override
+    public int intersect(int[] keys, int n, int[] out) {
+        if (n <= words.length) { return super.intersect(keys, n, out); }
+
+        int k = 0, j = 0;
+        for (int w = 0; w < words.length && j < n; w++) {
+            long word = words[w];
+            while (word != 0 && j < n) {
+                int resource = (w << 6) + Long.numberOfTrailingZeros(word);
+                j = gallop(keys, j, n, resource);
+                if (j < n && keys[j] == resource) { out[k++] = resource; }
+                word &= word - 1; // clear lowest set bit
+            }
+        }
+        return k;
+    }
+
+    @Override
+    public boolean intersects(int[] keys, int n) {
+        if (n <= words.length) { return super.intersects(keys, n); }
+
+        int j = 0;
+        for (int w = 0; w < words.length && j < n; w++) {
+            long word = words[w];
+            while (word != 0 && j < n) {
+                int resource = (w << 6) + Long.numberOfTrailingZeros(word);
+                j = gallop(keys, j, n, resource);
+                if (j < n && keys[j] == resource) { return true; }
+                word &= word - 1; // clear lowest set bit
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public BitsetResourceStore clone() {
+        BitsetResourceStore copy = (BitsetResourceStore) super.clone();
+        copy.words = words.clone();
+        return copy;
+    }
+
+    static void checkResource(int resource) {
+        if (resource < 0) {
+            throw new IllegalArgumentException("Resources must be non-negative: " + resource);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package iat.resource;
+
+import java.util.Arrays;
+
+/**
+ * Resource store backed by an open-addressing hash set of ints with
+ * linear probing. Empty slots hold -1, which is never a valid resource.
+ * The table is kept at most half full.
+ */
+public class HashResourceStore extends ResourceStore {
+
+    private static final int EMPTY = -1;
+
+    private int[] table;
+    private int mask;
+    private int size;
+
+    // Constructor
+    public HashResourceStore(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2 * expectedSize, 4) - 1) << 1;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    @Override
+    public boolean add(int resource) {
+        BitsetResourceStore.checkResource(resource);
+
+        if (2 * (size + 1) > table.length) { rehash(2 * table.length); }
+
+        int i = slot(resource);
+        while (table[i] != EMPTY) {
+            if (table[i] == resource) { return false; }
+            i = (i + 1) & mask;
+        }
+        table[i] = resource;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(int resource) {
+        if (resource < 0) { return false; }
+
+        int i = slot(resource);
+        while (table[i] != EMPTY) {
+            if (table[i] == resource) { return true; }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] result = new int[size];
+        int k = 0;
+        for (int key : table) {
+            if (key != EMPTY) { result[k++] = key; }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // ----------------------------------------------------------
+    // Matching
+    // ----------------------------------------------------------
+
+    /**
+     * Probes the table once per key, unless the keys outnumber the
+     * stored resources: then binary-searches each resource in the keys.
+     */
+    @Override
+    public int intersect(int[] keys, int n, int[] out) {
+        if (n <= size) { return super.intersect(keys, n, out); }
+
+        int k = 0;
+        for (int key : table) {
+            if (key != EMPTY && Arrays.binarySearch(keys, 0, n, key) >= 0) { out[k++] = key; }
+        }
+        Arrays.sort(out, 0, k);
+        return k;
+    }
+
+    @Override
+    public boolean intersects(int[] keys, int n) {
+        if (n <= size) { return super.intersects(keys, n); }
+
+        for (int key : table) {
+            if (key != EMPTY && Arrays.binarySearch(keys, 0, n, key) >= 0) { return true; }
+        }
+        return false;
+    }
+
+    @Override
+    public HashResourceStore clone() {
+        HashResourceStore copy = (HashResourceStore) super.clone();
+        copy.table = table.clone();
+        return copy;
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    private int slot(int resource) {
+        int h = resource * 0x9E3779B9; // spread sequential keys
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+        for (int key : old) {
+            if (key != EMPTY) { add(key); }
+        }
+    }
+}
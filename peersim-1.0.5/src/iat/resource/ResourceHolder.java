@@ -0,0 +1,11 @@
+package iat.resource;
+
+/**
+ * Protocol that holds resources in a {@link ResourceStore}, so that
+ * controls such as {@link ResourceInitializer} can fill it.
+ */
+public interface ResourceHolder {
+
+    /** The live store of this node's resources */
+    ResourceStore getResourceStore();
+}
@@ -0,0 +1,135 @@
+package iat.resource;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.util.AliasTable;
+
+/**
+ * Replaces the resources of every node with a generated distribution.
+ * All draws come from CommonState.r, so the same random.seed always
+ * gives the same workload and protocol variants can be compared on
+ * identical data. Resources are the integers [0, universe); resource 0
+ * is the most popular one in the skewed distributions.
+ * 
+ * Distributions ("distribution" parameter):
+ * - uniform: each node holds between min and max distinct resources,
+ *   drawn uniformly from the universe
+ * - zipf: like uniform, but resources are drawn from a Zipf distribution
+ *   with exponent alpha
+ * - replicated: resource i is replicated on a number of distinct nodes
+ *   proportional to zipf(i)^beta (beta 1 = proportional, 0.5 = square
+ *   root replication), with about (min+max)/2 resources per node overall
+ * 
+ * init.res iat.resource.ResourceInitializer
+ * init.res.protocol pher
+ * init.res.universe 50
+ * init.res.distribution zipf
+ * init.res.min 1
+ * init.res.max 10
+ * init.res.alpha 1.0
+ */
+public class ResourceInitializer implements Control {
+
+    // ----------------------------------------------------------
+    // Config Parameters
+    // ----------------------------------------------------------
+
+    private static final String PAR_PROTO = "protocol";
+    private static final String PAR_UNIVERSE = "universe";
+    private static final String PAR_DISTRIBUTION = "distribution"; // optional, default "uniform"
+    private static final String PAR_MIN = "min"; // optional, default 1
+    private static final String PAR_MAX = "max"; // optional, default min
+    private static final String PAR_ALPHA = "alpha"; // optional, default 1.0
+    private static final String PAR_BETA = "beta"; // optional, default 1.0
+
+    // Draws per wanted resource before giving up on finding a new one
+    private static final int MAX_ATTEMPTS = 10;
+
+    // ----------------------------------------------------------
+    // Fields
+    // ----------------------------------------------------------
+
+    // ID of the ResourceHolder protocol
+    private final int pid;
+    private final int universe;
+    private final String distribution;
+    private final int min, max;
+    private final double alpha, beta;
+
+    // Constructor
+    public ResourceInitializer(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROTO);
+        universe = Configuration.getInt(prefix + "." + PAR_UNIVERSE);
+        distribution = Configuration.getString(prefix + "." + PAR_DISTRIBUTION, "uniform");
+        min = Configuration.getInt(prefix + "." + PAR_MIN, 1);
+        max = Configuration.getInt(prefix + "." + PAR_MAX, min);
+        alpha = Configuration.getDouble(prefix + "." + PAR_ALPHA, 1.0);
+        beta = Configuration.getDouble(prefix + "." + PAR_BETA, 1.0);
+
+        if (universe <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_UNIVERSE, "must be positive");
+        }
+        if (min < 0 || max < min) {
+            throw new IllegalParameterException(prefix + "." + PAR_MAX, "need 0 <= min <= max");
+        }
+        if (!distribution.equals("uniform") && !distribution.equals("zipf")
+                && !distribution.equals("replicated")) {
+            throw new IllegalParameterException(prefix + "." + PAR_DISTRIBUTION,
+                "Unknown distribution " + distribution + ", must be uniform, zipf or replicated");
+        }
+    }
+
+    @Override
+    public boolean execute() {
+        for (int i = 0; i < Network.size(); i++) {
+            store(i).clear();
+        }
+
+        if (distribution.equals("replicated")) {
+            replicate();
+        } else {
+            AliasTable zipf = distribution.equals("zipf") ? AliasTable.zipf(universe, alpha) : null;
+
+            for (int i = 0; i < Network.size(); i++) {
+                ResourceStore store = store(i);
+                int count = min + CommonState.r.nextInt(max - min + 1);
+
+                for (int k = 0; k < count * MAX_ATTEMPTS && store.size() < count; k++) {
+                    store.add(zipf != null ? zipf.next(CommonState.r) : CommonState.r.nextInt(universe));
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /** Places copies of each resource on distinct random nodes */
+    private void replicate() {
+        int size = Network.size();
+        if (size == 0) { return; }
+
+        double[] weights = AliasTable.zipfWeights(universe, alpha);
+        double sum = 0.0;
+        for (int r = 0; r < universe; r++) {
+            weights[r] = Math.pow(weights[r], beta);
+            sum += weights[r];
+        }
+
+        double copies = size * (min + max) / 2.0;
+        for (int r = 0; r < universe; r++) {
+            int replicas = Math.min(size, (int) Math.round(copies * weights[r] / sum));
+
+            int placed = 0;
+            for (int k = 0; k < replicas * MAX_ATTEMPTS && placed < replicas; k++) {
+                if (store(CommonState.r.nextInt(size)).add(r)) { placed++; }
+            }
+        }
+    }
+
+    private ResourceStore store(int index) {
+        return ((ResourceHolder) Network.get(index).getProtocol(pid)).getResourceStore();
+    }
+}
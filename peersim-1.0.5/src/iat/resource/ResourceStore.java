@@ -0,0 +1,131 @@
+package iat.resource;
+
+/**
+ * Set of resources held by a node. Resources are abstracted as
+ * non-negative integers drawn from a universe [0, universe). Lookups
+ * are allocation-free; the implementation is picked by {@link #create}
+ * from the universe size and the expected number of resources:
+ * - {@link BitsetResourceStore}: dense long[] bitset, O(1), universe/8 bytes
+ * - {@link SortedResourceStore}: sorted int[], O(log n), for few resources
+ * - {@link HashResourceStore}: open-addressing int hash set, O(1), for many
+ *   resources out of a large universe
+ */
+public abstract class ResourceStore implements Cloneable {
+
+    // Bitsets are used while they cost at most this many bits per resource
+    private static final int BITSET_BITS_PER_RESOURCE = 64;
+    // Sorted arrays are used up to this many resources
+    private static final int MAX_SORTED_SIZE = 64;
+
+    // ----------------------------------------------------------
+    // Initialization
+    // ----------------------------------------------------------
+
+    /**
+     * Picks the cheapest store for a node expected to hold about
+     * expectedSize resources out of [0, universe).
+     * A non-positive universe means it is unknown.
+     */
+    public static ResourceStore create(int universe, int expectedSize) {
+        expectedSize = Math.max(expectedSize, 1);
+
+        if (universe > 0 && (long) universe <= (long) BITSET_BITS_PER_RESOURCE * expectedSize) {
+            return new BitsetResourceStore(universe);
+        } else if (expectedSize <= MAX_SORTED_SIZE) {
+            return new SortedResourceStore(expectedSize);
+        } else {
+            return new HashResourceStore(expectedSize);
+        }
+    }
+
+    // ----------------------------------------------------------
+    // Set Methods
+    // ----------------------------------------------------------
+
+    /** Adds resource, returns false if it was already there */
+    public abstract boolean add(int resource);
+
+    /** Does the store hold this resource? */
+    public abstract boolean contains(int resource);
+
+    /** Number of distinct resources */
+    public abstract int size();
+
+    /** Removes all resources */
+    public abstract void clear();
+
+    /** Resources in ascending order */
+    public abstract int[] toArray();
+
+    // ----------------------------------------------------------
+    // Matching
+    // ----------------------------------------------------------
+
+    // The key arrays below must be sorted ascending without duplicates,
+    // only keys[0..n) is read and it is never modified. This default
+    // probes the store once per key; backends with ordered storage
+    // override it with merge intersection.
+
+    /**
+     * Writes the resources found among keys[0..n) to out in ascending
+     * order; out needs room for min(n, size()) entries.
+     * @return the number of resources written
+     */
+    public int intersect(int[] keys, int n, int[] out) {
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (contains(keys[i])) { out[k++] = keys[i]; }
+        }
+        return k;
+    }
+
+    /** Does the store hold any of keys[0..n)? Stops at the first one. */
+    public boolean intersects(int[] keys, int n) {
+        for (int i = 0; i < n; i++) {
+            if (contains(keys[i])) { return true; }
+        }
+        return false;
+    }
+
+    /** Does the store hold all of keys[0..n)? Stops at the first miss. */
+    public boolean containsAll(int[] keys, int n) {
+        if (n > size()) { return false; }
+        for (int i = 0; i < n; i++) {
+            if (!contains(keys[i])) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * First index in a[from..to) whose value is >= key, or to. Exponential
+     * then binary search, so walking a long sorted array with increasing
+     * keys costs O(log gap) per step.
+     */
+    static int gallop(int[] a, int from, int to, int key) {
+        int step = 1;
+        int lo = from, hi = from;
+        while (hi < to && a[hi] < key) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        if (hi > to) { hi = to; }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) { lo = mid + 1; } else { hi = mid; }
+        }
+        return lo;
+    }
+
+    /** Independent copy of this store */
+    @Override
+    public ResourceStore clone() {
+        try { return (ResourceStore) super.clone(); }
+        catch (CloneNotSupportedException e) { throw new InternalError(e.toString()); }
+    }
+
+    @Override
+    public String toString() {
+        return java.util.Arrays.toString(toArray());
+    }
+}
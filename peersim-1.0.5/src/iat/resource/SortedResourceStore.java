@@ -0,0 +1,112 @@
+package iat.resource;
+
+import java.util.Arrays;
+
+/**
+ * Resource store backed by a sorted int[] searched by bisection.
+ * Compact and cache-friendly for nodes holding few resources; inserts
+ * shift the tail, so it is meant for stores filled at initialization.
+ */
+public class SortedResourceStore extends ResourceStore {
+
+    private int[] keys;
+    private int size;
+
+    // Constructor
+    public SortedResourceStore(int capacity) {
+        keys = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    @Override
+    public boolean add(int resource) {
+        BitsetResourceStore.checkResource(resource);
+
+        int pos = Arrays.binarySearch(keys, 0, size, resource);
+        if (pos >= 0) { return false; }
+
+        pos = -(pos + 1); // insertion point
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        keys[pos] = resource;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(int resource) {
+        return Arrays.binarySearch(keys, 0, size, resource) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public int[] toArray() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    // ----------------------------------------------------------
+    // Matching
+    // ----------------------------------------------------------
+
+    /** Merge intersection, galloping through the longer array */
+    @Override
+    public int intersect(int[] other, int n, int[] out) {
+        int k = 0;
+        if (size <= n) {
+            for (int i = 0, j = 0; i < size && j < n; i++) {
+                j = gallop(other, j, n, keys[i]);
+                if (j < n && other[j] == keys[i]) { out[k++] = keys[i]; }
+            }
+        } else {
+            for (int i = 0, j = 0; i < n && j < size; i++) {
+                j = gallop(keys, j, size, other[i]);
+                if (j < size && keys[j] == other[i]) { out[k++] = other[i]; }
+            }
+        }
+        return k;
+    }
+
+    @Override
+    public boolean intersects(int[] other, int n) {
+        if (size <= n) {
+            for (int i = 0, j = 0; i < size && j < n; i++) {
+                j = gallop(other, j, n, keys[i]);
+                if (j < n && other[j] == keys[i]) { return true; }
+            }
+        } else {
+            for (int i = 0, j = 0; i < n && j < size; i++) {
+                j = gallop(keys, j, size, other[i]);
+                if (j < size && keys[j] == other[i]) { return true; }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsAll(int[] other, int n) {
+        if (n > size) { return false; }
+        for (int i = 0, j = 0; i < n; i++) {
+            j = gallop(keys, j, size, other[i]);
+            if (j == size || keys[j] != other[i]) { return false; }
+        }
+        return true;
+    }
+
+    @Override
+    public SortedResourceStore clone() {
+        SortedResourceStore copy = (SortedResourceStore) super.clone();
+        copy.keys = keys.clone();
+        return copy;
+    }
+}
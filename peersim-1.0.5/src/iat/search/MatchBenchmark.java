@@ -0,0 +1,143 @@
+package iat.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import iat.resource.BitsetResourceStore;
+import iat.resource.HashResourceStore;
+import iat.resource.ResourceStore;
+import iat.resource.SortedResourceStore;
+
+/**
+ * Measures the per-hop cost of keyword matching (what SearchProtocol.match
+ * and matches do for every message) as the query payload and the node's
+ * key storage grow, for each key storage backend and for the boxed
+ * HashMap matcher used before. Results of all matchers are cross-checked.
+ *
+ * Usage: java iat.search.MatchBenchmark [universe] [seed]
+ */
+public class MatchBenchmark {
+
+    private static final int[] PAYLOAD_SIZES = {10, 100, 1000, 10000, 100000};
+    private static final int[] STORAGE_SIZES = {10, 100, 1000, 10000};
+    private static final String[] BACKENDS = {"boxed", "sorted", "bitset", "hash"};
+
+    // Repeat each measurement until it took at least this long
+    private static final long MIN_NANOS = 20_000_000L;
+
+    private static volatile int sink; // keeps the JIT from dropping the work
+
+    public static void main(String[] args) {
+        int universe = (args.length > 0 ? Integer.parseInt(args[0]) : 200000);
+        long seed = (args.length > 1 ? Long.parseLong(args[1]) : 1234567890L);
+        Random r = new Random(seed);
+
+        System.out.println("# universe " + universe + ", ns per hop");
+        System.out.println("# payload storage backend match matches");
+
+        for (int payloadSize : PAYLOAD_SIZES) {
+            for (int storageSize : STORAGE_SIZES) {
+                QueryPayload query = QueryPayload.intern(randomKeys(r, universe, payloadSize));
+                int[] stored = randomKeys(r, universe, storageSize);
+
+                int[] expected = null;
+                for (String backend : BACKENDS) {
+                    Matcher m = new Matcher(backend, universe, stored);
+
+                    int[] found = m.matches(query);
+                    if (expected == null) {
+                        expected = found;
+                    } else if (!Arrays.equals(expected, found) || m.match(query) != (found != null)) {
+                        throw new IllegalStateException("Backend " + backend + " disagrees on payload "
+                            + payloadSize + ", storage " + storageSize);
+                    }
+
+                    double matchNs = time(() -> sink += m.match(query) ? 1 : 0);
+                    double matchesNs = time(() -> {
+                        int[] x = m.matches(query);
+                        sink += (x == null ? 0 : x.length);
+                    });
+                    System.out.printf("%d %d %s %.1f %.1f%n",
+                        payloadSize, storageSize, backend, matchNs, matchesNs);
+                }
+            }
+        }
+    }
+
+    // ----------------------------------------------------------
+    // Utility Methods
+    // ----------------------------------------------------------
+
+    /** Average ns per run of op, after a warm-up */
+    private static double time(Runnable op) {
+        for (int i = 0; i < 1000; i++) { op.run(); }
+
+        long runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) { op.run(); }
+            runs += 100;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_NANOS);
+        return (double) elapsed / runs;
+    }
+
+    /** n distinct random keys in [0, universe) */
+    private static int[] randomKeys(Random r, int universe, int n) {
+        BitsetResourceStore seen = new BitsetResourceStore(universe);
+        int[] keys = new int[Math.min(n, universe)];
+        for (int i = 0; i < keys.length; ) {
+            int key = r.nextInt(universe);
+            if (seen.add(key)) { keys[i++] = key; }
+        }
+        return keys;
+    }
+
+    /** One key storage backend with SearchProtocol's matching logic */
+    private static class Matcher {
+        private final HashMap<Integer, Integer> boxed; // the matcher before ResourceStore
+        private final ResourceStore store;
+
+        Matcher(String backend, int universe, int[] stored) {
+            if (backend.equals("boxed")) {
+                boxed = new HashMap<>();
+                for (int key : stored) { boxed.put(key, key); }
+                store = null;
+            } else {
+                boxed = null;
+                if (backend.equals("sorted")) {
+                    store = new SortedResourceStore(stored.length);
+                } else if (backend.equals("bitset")) {
+                    store = new BitsetResourceStore(universe);
+                } else {
+                    store = new HashResourceStore(stored.length);
+                }
+                for (int key : stored) { store.add(key); }
+            }
+        }
+
+        boolean match(QueryPayload query) {
+            if (store != null) { return query.anyIn(store); }
+            return matches(query) != null;
+        }
+
+        int[] matches(QueryPayload query) {
+            if (store != null) { return query.commonWith(store); }
+
+            ArrayList<Integer> temp = new ArrayList<>();
+            for (int i = 0; i < query.size(); i++) {
+                if (boxed.containsKey(Integer.valueOf(query.getKey(i)))) {
+                    temp.add(Integer.valueOf(query.getKey(i)));
+                }
+            }
+            if (temp.isEmpty()) { return null; }
+
+            int[] result = new int[temp.size()];
+            for (int i = 0; i < temp.size(); i++) { result[i] = temp.get(i).intValue(); }
+            return result;
+        }
+    }
+}
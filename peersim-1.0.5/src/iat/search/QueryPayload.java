@@ -0,0 +1,141 @@
+package iat.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import iat.resource.ResourceStore;
+
+/**
+ * Immutable set of query keys, interned: every distinct key set exists
+ * once and is shared by all nodes and messages that carry it, so memory
+ * is O(distinct queries) instead of O(nodes x keywords). Keys are kept
+ * sorted and without duplicates, which lets matchers binary-search the
+ * query or walk it against their own sorted keys. Each payload has a
+ * small dense ID, see get(int).
+ */
+public final class QueryPayload {
+
+    // Interned payloads by content, and by ID
+    private static final HashMap<QueryPayload, QueryPayload> registry = new HashMap<>();
+    private static final ArrayList<QueryPayload> byId = new ArrayList<>();
+
+    private final int id;
+    private final int[] keys; // sorted, distinct
+    private final int hash; // content hash, computed once
+
+    private QueryPayload(int id, int[] keys) {
+        this.id = id;
+        this.keys = keys;
+        this.hash = Arrays.hashCode(keys);
+    }
+
+    // ----------------------------------------------------------
+    // Registry
+    // ----------------------------------------------------------
+
+    /** The shared payload with the given keys (in any order, duplicates ignored) */
+    public static QueryPayload intern(int[] keys) {
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        if (n < sorted.length) {
+            sorted = Arrays.copyOf(sorted, n);
+        }
+
+        QueryPayload candidate = new QueryPayload(byId.size(), sorted);
+        QueryPayload interned = registry.get(candidate);
+        if (interned == null) {
+            registry.put(candidate, candidate);
+            byId.add(candidate);
+            interned = candidate;
+        }
+        return interned;
+    }
+
+    /** The payload with the given ID */
+    public static QueryPayload get(int id) {
+        return byId.get(id);
+    }
+
+    /** Number of distinct payloads interned so far */
+    public static int count() {
+        return byId.size();
+    }
+
+    // ----------------------------------------------------------
+    // Keys
+    // ----------------------------------------------------------
+
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /** The i-th smallest key */
+    public int getKey(int i) {
+        return keys[i];
+    }
+
+    /** Whether key is in the query, O(log size) */
+    public boolean contains(int key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /** A copy of the keys, sorted */
+    public int[] toArray() {
+        return keys.clone();
+    }
+
+    // ----------------------------------------------------------
+    // Matching
+    // ----------------------------------------------------------
+
+    /** Whether store holds any key of this query (OR semantics) */
+    public boolean anyIn(ResourceStore store) {
+        return store.intersects(keys, keys.length);
+    }
+
+    /** Whether store holds every key of this query (AND semantics) */
+    public boolean allIn(ResourceStore store) {
+        return store.containsAll(keys, keys.length);
+    }
+
+    /** Keys of this query held by store, sorted, or null if none */
+    public int[] commonWith(ResourceStore store) {
+        int[] found = new int[Math.min(keys.length, store.size())];
+        int n = store.intersect(keys, keys.length, found);
+        return (n == 0 ? null : (n == found.length ? found : Arrays.copyOf(found, n)));
+    }
+
+    // ----------------------------------------------------------
+    // Object Methods
+    // ----------------------------------------------------------
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof QueryPayload)) return false;
+        QueryPayload other = (QueryPayload) obj;
+        return hash == other.hash && Arrays.equals(keys, other.keys);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPayload{id=" + id + ", keys=" + keys.length + '}';
+    }
+}
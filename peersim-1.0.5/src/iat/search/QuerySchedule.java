@@ -0,0 +1,122 @@
+package iat.search;
+
+import java.util.Arrays;
+
+/**
+ * Global calendar of query productions: which node issues which query
+ * payload at which cycle. Entries are bucketed by cycle; the first lookup
+ * in a cycle links that cycle's bucket per node index in O(bucket), after
+ * which "any query for this node now?" is an O(1) array probe, so nodes
+ * that never query cost nothing. One instance is shared by all nodes.
+ *
+ * for (int e = schedule.first(cycle, node.getIndex()); e >= 0; e = schedule.next(e))
+ *     issue(schedule.getPayload(e));
+ */
+public class QuerySchedule {
+    private static final int INITIAL_BUCKET = 4;
+
+    // ----------------------------------------------------------
+    // Calendar
+    // ----------------------------------------------------------
+
+    // Per cycle: node indices and payload IDs of its entries
+    private int[][] bucketNode = new int[0][];
+    private int[][] bucketPayload = new int[0][];
+    private int[] bucketSize = new int[0];
+    private int total = 0;
+
+    // ----------------------------------------------------------
+    // Per-Node Index of the Loaded Cycle
+    // ----------------------------------------------------------
+
+    private int loadedCycle = -1;
+    private int[] head = new int[0]; // first entry of each node index
+    private int[] stamp = new int[0]; // cycle head[] is valid for, -1 never
+    private int[] next = new int[0]; // next entry of the same node, -1 last
+
+    // ----------------------------------------------------------
+    // Building
+    // ----------------------------------------------------------
+
+    /** Schedules node (by index) to issue query at cycle */
+    public void add(int cycle, int nodeIndex, QueryPayload query) {
+        if (cycle < 0 || nodeIndex < 0) {
+            throw new IllegalArgumentException("Negative cycle or node index");
+        }
+        if (cycle >= bucketSize.length) {
+            int n = Math.max(cycle + 1, 2 * bucketSize.length);
+            bucketNode = Arrays.copyOf(bucketNode, n);
+            bucketPayload = Arrays.copyOf(bucketPayload, n);
+            bucketSize = Arrays.copyOf(bucketSize, n);
+        }
+        if (bucketNode[cycle] == null) {
+            bucketNode[cycle] = new int[INITIAL_BUCKET];
+            bucketPayload[cycle] = new int[INITIAL_BUCKET];
+        } else if (bucketSize[cycle] == bucketNode[cycle].length) {
+            bucketNode[cycle] = Arrays.copyOf(bucketNode[cycle], 2 * bucketSize[cycle]);
+            bucketPayload[cycle] = Arrays.copyOf(bucketPayload[cycle], 2 * bucketSize[cycle]);
+        }
+        int k = bucketSize[cycle]++;
+        bucketNode[cycle][k] = nodeIndex;
+        bucketPayload[cycle][k] = query.getId();
+        total++;
+
+        if (cycle == loadedCycle) { loadedCycle = -1; } // relink on next lookup
+    }
+
+    /** Total number of scheduled queries */
+    public int size() {
+        return total;
+    }
+
+    /** Number of queries scheduled at cycle */
+    public int size(int cycle) {
+        return (cycle >= 0 && cycle < bucketSize.length ? bucketSize[cycle] : 0);
+    }
+
+    // ----------------------------------------------------------
+    // Lookup
+    // ----------------------------------------------------------
+
+    /** First entry of node index at cycle, -1 if it issues no query then */
+    public int first(int cycle, int nodeIndex) {
+        if (cycle != loadedCycle) { load(cycle); }
+        if (nodeIndex >= stamp.length || stamp[nodeIndex] != cycle) { return -1; }
+        return head[nodeIndex];
+    }
+
+    /** Entry after e for the same node and cycle, -1 if none */
+    public int next(int e) {
+        return next[e];
+    }
+
+    /** Query of entry e of the loaded cycle */
+    public QueryPayload getPayload(int e) {
+        return QueryPayload.get(bucketPayload[loadedCycle][e]);
+    }
+
+    /** Links the bucket of cycle per node index */
+    private void load(int cycle) {
+        loadedCycle = cycle;
+        int n = size(cycle);
+        if (n == 0) { return; }
+
+        int[] nodes = bucketNode[cycle];
+        if (next.length < n) { next = new int[n]; }
+
+        // Insert back to front so each node's entries keep their order
+        for (int e = n - 1; e >= 0; e--) {
+            int node = nodes[e];
+            if (node >= stamp.length) {
+                int len = Math.max(node + 1, 2 * stamp.length);
+                int old = stamp.length;
+                head = Arrays.copyOf(head, len);
+                stamp = Arrays.copyOf(stamp, len);
+                Arrays.fill(stamp, old, len, -1);
+            }
+            next[e] = (stamp[node] == cycle ? head[node] : -1);
+            head[node] = e;
+            stamp[node] = cycle;
+        }
+    }
+}
@@ -13,9 +13,13 @@ public class SMessage implements Cloneable {
 
     public Node originator; // the query producer
 
-    public int[] payload; // an array of keys
+    public QueryPayload payload; // the interned query keys, shared
 
-    public SMessage(Node originator, int type, int hops, int[] payload) {
+    // Per-walker filter of visited node indices, a 64-bit Bloom filter
+    // with two bits per node; copied with the walker on every hop
+    public long visited;
+
+    public SMessage(Node originator, int type, int hops, QueryPayload payload) {
         this.originator = originator;
         this.type = type;
         this.payload = payload;
@@ -23,6 +27,20 @@ public class SMessage implements Cloneable {
         this.hops = hops;
     }
 
+    public void markVisited(int index) {
+        this.visited |= visitedBits(index);
+    }
+
+    /** Whether this walker may have visited node index, false positives possible */
+    public boolean mayHaveVisited(int index) {
+        long bits = visitedBits(index);
+        return (this.visited & bits) == bits;
+    }
+
+    private static long visitedBits(int index) {
+        return (1L << ((index * 0x9E3779B9) >>> 26)) | (1L << ((index * 0x85EBCA6B) >>> 26));
+    }
+
     public Object clone() throws CloneNotSupportedException {
         SMessage m = (SMessage) super.clone();
         
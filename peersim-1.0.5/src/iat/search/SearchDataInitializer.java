@@ -1,11 +1,22 @@
 package iat.search;
 
+import peersim.config.Configuration;
+import peersim.core.CommonState;
 import peersim.core.Network;
+import peersim.util.IntHashSet;
 
+/**
+ * Fills the QuerySchedule shared by all SearchProtocol nodes: nodes 0 to
+ * query_nodes - 1 each produce max_queries queries, one every
+ * query_interval cycles, node i starting at cycle i % query_interval so
+ * production is spread over the interval. A query asks for and_keys keys
+ * drawn at random from [0, keywords), or for all of them if and_keys is 0.
+ */
 public class SearchDataInitializer implements peersim.core.Control {
     
     /*
      * 
+     * init.1.protocol 0
      * init.1.keywords 10000
 init.1.query_nodes 100
 init.1.query_interval 1
@@ -13,6 +24,7 @@ init.1.max_queries 1
 init.1.and_keys 0
      */
 
+    public static final String PAR_PID = "protocol";
     public static final String PAR_KEYWORDS = "keywords";
     public static final String PAR_QUERY_NODES = "query_nodes";
     public static final String PAR_QUERY_INTERVAL = "query_interval";
@@ -24,32 +36,65 @@ init.1.and_keys 0
     private final int queryInterval;
     private final int maxQueries;
     private final int andKeys;
+    private final int pid;
      
 
     public SearchDataInitializer(String prefix) {
-        this.keywords = peersim.config.Configuration.getInt(prefix + "." + PAR_KEYWORDS);
-        this.queryNodes = peersim.config.Configuration.getInt(prefix + "." + PAR_QUERY_NODES);
-        this.queryInterval = peersim.config.Configuration.getInt(prefix + "." + PAR_QUERY_INTERVAL);
-        this.maxQueries = peersim.config.Configuration.getInt(prefix + "." + PAR_MAX_QUERIES);
-        this.andKeys = peersim.config.Configuration.getInt(prefix + "." + PAR_AND_KEYS);
+        this.pid = Configuration.getPid(prefix + "." + PAR_PID);
+        this.keywords = Configuration.getInt(prefix + "." + PAR_KEYWORDS);
+        this.queryNodes = Configuration.getInt(prefix + "." + PAR_QUERY_NODES);
+        this.queryInterval = Math.max(1, Configuration.getInt(prefix + "." + PAR_QUERY_INTERVAL));
+        this.maxQueries = Configuration.getInt(prefix + "." + PAR_MAX_QUERIES);
+        this.andKeys = Math.min(Configuration.getInt(prefix + "." + PAR_AND_KEYS), this.keywords);
     }
 
     public boolean execute() {
-        for (int i = 0; i < this.queryNodes; i++) {
-            SearchProtocol prot = (SearchProtocol) Network.get(i).getProtocol(0);
+        QuerySchedule schedule = new QuerySchedule();
 
-            prot.queryDistro.put(i, this.generateQuery());
+        // Without and_keys every query asks for the same keys: build and
+        // intern them once, all entries share the payload
+        QueryPayload all = (this.andKeys > 0 ? null : this.generateQuery());
+
+        int nodes = Math.min(this.queryNodes, Network.size());
+        for (int i = 0; i < nodes; i++) {
+            int cycle = i % this.queryInterval;
+            for (int q = 0; q < this.maxQueries; q++) {
+                QueryPayload query = (all != null ? all : this.generateQuery(this.andKeys));
+                schedule.add(cycle, i, query);
+                cycle += this.queryInterval;
+            }
+        }
+
+        for (int i = 0; i < Network.size(); i++) {
+            ((SearchProtocol) Network.get(i).getProtocol(this.pid)).setQuerySchedule(schedule);
         }
         
         return false;
     }
 
-    private Object generateQuery() {
+    private QueryPayload generateQuery() {
         int[] keys = new int[this.keywords];
         for (int i = 0; i < this.keywords; i++) {
             keys[i] = i;
         }
-        return keys;
+        return QueryPayload.intern(keys);
+    }
+
+    /** n distinct keys drawn at random from [0, keywords), O(n) */
+    private QueryPayload generateQuery(int n) {
+        // Floyd's sampling
+        IntHashSet chosen = new IntHashSet();
+        int[] keys = new int[n];
+        int k = 0;
+        for (int j = this.keywords - n; j < this.keywords; j++) {
+            int t = CommonState.r.nextInt(j + 1);
+            if (!chosen.add(t)) {
+                t = j;
+                chosen.add(t);
+            }
+            keys[k++] = t;
+        }
+        return QueryPayload.intern(keys);
     }
 
 
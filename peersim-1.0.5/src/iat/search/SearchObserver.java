@@ -28,6 +28,8 @@ public class SearchObserver implements peersim.core.Control {
         long time = peersim.core.CommonState.getTime();
 
         IncrementalStats is = new IncrementalStats();
+        long sent = 0;
+        long answered = 0;
 
         for (int i = 0; i < Network.size(); i++) {
             peersim.core.Node node = Network.get(i);
@@ -35,9 +37,18 @@ public class SearchObserver implements peersim.core.Control {
             SearchProtocol prot = (SearchProtocol) node.getProtocol(pid);
 
             is.add(prot.messageTable.size());
+            sent += prot.sent;
+            answered += prot.hitTable.size();
         }
 
         System.out.println("SearchObserver" + ": " + time + " " + is);
+
+        if (verbosity > 1) {
+            // Cost of the search strategy: messages per answered query
+            System.out.println("SearchObserver" + ": " + time + " sent=" + sent
+                + " answered=" + answered
+                + " sent/answered=" + (answered == 0 ? "-" : String.format("%.1f", (double) sent / answered)));
+        }
         
         return false;
     }
@@ -1,61 +1,130 @@
 package iat.search;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Map;
 
+import iat.resource.BitsetResourceStore;
+import iat.resource.HashResourceStore;
+import iat.resource.ResourceHolder;
+import iat.resource.ResourceStore;
+import iat.resource.SortedResourceStore;
 import peersim.cdsim.CDProtocol;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Linkable;
+import peersim.core.Log;
 import peersim.core.Node;
-
-public abstract class SearchProtocol implements CDProtocol, Linkable {
-
-    public Hashtable<Object, Integer> messageTable;
-    public HashSet<Object> hitTable;
-    public ArrayList<Object> incomingQueue;
+import peersim.util.IntHashSet;
+import peersim.util.IntIntHashMap;
+
+public abstract class SearchProtocol implements CDProtocol, Linkable, ResourceHolder {
+
+    // Key storage backend: "sorted" (sorted int[], default), "bitset" or "hash"
+    public static final String PAR_KEYSTORE = "keystore";
+    // Expected key range [0, universe) for the bitset backend, optional
+    public static final String PAR_KEYSTORE_UNIVERSE = "keystore.universe";
+
+    // Times each message (by SMessage.seq) was seen by this node
+    public IntIntHashMap messageTable;
+    // Seqs of this node's queries that had a hit
+    public IntHashSet hitTable;
+    // Messages this node sent or forwarded
+    public long sent;
     public ArrayList<Node> view;
-    public HashMap<Integer, Integer> keyStorage;
-    public HashMap<Integer, Object> queryDistro;
+    // Keys held by this node
+    public ResourceStore keyStorage;
+    // Queries to produce, shared by all nodes, see SearchDataInitializer
+    protected QuerySchedule schedule;
 
     protected boolean andMatch = false;
     protected int ttl = 10;
 
+    // Shared by all clones
+    protected final Log log;
+
+    private static final int INITIAL_INBOX = 16;
+
+    // Double-buffered inbox: pending holds the messages that arrived in
+    // earlier cycles, arriving the ones that arrived in arrivingTime.
+    // A node only processes pending, so messages sent to it during the
+    // current cycle wait for the next one.
+    private SMessage[] pending;
+    private int pendingCount;
+    private SMessage[] arriving;
+    private int arrivingCount;
+    private int arrivingTime;
+
     public SearchProtocol(String prefix, Object obj) {
-        this.messageTable = new Hashtable<Object, Integer>();
-        this.hitTable = new HashSet<Object>();
-        this.incomingQueue = new ArrayList<Object>();
+        this.messageTable = new IntIntHashMap();
+        this.hitTable = new IntHashSet();
+        this.pending = new SMessage[INITIAL_INBOX];
+        this.arriving = new SMessage[INITIAL_INBOX];
+        this.pendingCount = 0;
+        this.arrivingCount = 0;
+        this.arrivingTime = -1;
         this.view = new ArrayList<Node>();
-        this.keyStorage = new HashMap<Integer, Integer>();
-        this.queryDistro = new HashMap<Integer, Object>();
+        this.keyStorage = createKeyStorage(prefix);
+        this.log = Log.get(prefix);
     }
 
 
     public void nextCycle(Node node, int protocolID) {
-        int currentTime = CommonState.getIntTime();
+        rollOver(CommonState.getIntTime());
 
-        Iterator<Object> iter = incomingQueue.iterator();
+        // Linear pass, sends from process() land in arriving
+        for (int i = 0; i < pendingCount; i++) {
+            SMessage msg = pending[i];
+            pending[i] = null;
 
-        while (iter.hasNext()) {
-            SMessage msg = (SMessage) iter.next();
+            this.messageTable.increment(msg.seq, 1);
 
-            if (msg.hops == (currentTime - msg.start + 1)) {
-                continue;
-            }
+            this.process(msg, protocolID);
+        }
+        pendingCount = 0;
+    }
 
-            Integer actual = (Integer) this.messageTable.get(msg);
+    /** Queues msg for processing in the next cycle of this node */
+    protected void deliver(SMessage msg) {
+        rollOver(CommonState.getIntTime());
 
-            int index = (actual != null ? actual.intValue() + 1 : 1);
+        if (arrivingCount == arriving.length) {
+            arriving = Arrays.copyOf(arriving, 2 * arriving.length);
+        }
+        arriving[arrivingCount++] = msg;
+    }
 
-            this.messageTable.put(msg,  Integer.valueOf(index));
+    /** Moves messages that arrived before cycle now from arriving to pending */
+    private void rollOver(int now) {
+        if (arrivingTime == now) {
+            return;
+        }
+        arrivingTime = now;
+        if (arrivingCount == 0) {
+            return;
+        }
 
-            this.process(msg, protocolID);
+        if (pendingCount == 0) {
+            // Swap the buffers
+            SMessage[] tmp = pending;
+            pending = arriving;
+            arriving = tmp;
+            pendingCount = arrivingCount;
+        } else {
+            if (pendingCount + arrivingCount > pending.length) {
+                pending = Arrays.copyOf(pending, 2 * (pendingCount + arrivingCount));
+            }
+            System.arraycopy(arriving, 0, pending, pendingCount, arrivingCount);
+            Arrays.fill(arriving, 0, arrivingCount, null);
+            pendingCount += arrivingCount;
+        }
+        arrivingCount = 0;
+    }
 
-            iter.remove();
-        }    
+    /** Number of messages waiting in this node's inbox */
+    public int inboxSize() {
+        return pendingCount + arrivingCount;
     }
 
     public abstract void process(SMessage msg, int protocolID);
@@ -64,9 +133,10 @@ public abstract class SearchProtocol implements CDProtocol, Linkable {
         try {
             SMessage copy = (SMessage) mes.clone();
             copy.hops++;
-            this.messageTable.put(mes, Integer.valueOf(1));
+            this.sent++;
+            this.messageTable.put(mes.seq, 1);
             SearchProtocol sp = (SearchProtocol) n.getProtocol(pid);
-            sp.incomingQueue.add(copy);
+            sp.deliver(copy);
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -82,40 +152,67 @@ public abstract class SearchProtocol implements CDProtocol, Linkable {
                 SearchProtocol sp = (SearchProtocol) n.getProtocol(pid);
 
                 copy.type = SMessage.FWD; // sets FWD type
+                this.sent++;
 
-                sp.incomingQueue.add(copy);
+                sp.deliver(copy);
             } catch (CloneNotSupportedException cnse) {
-                System.out.println("Troubles with message cloning...!");
+                log.error("Troubles with message cloning...!");
             }
         }
     }
 
-    public void addQueryData(int cycle, int[] keys) {
-        this.queryDistro.put(Integer.valueOf(cycle), (Object) keys);
+    public void setQuerySchedule(QuerySchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    public QuerySchedule getQuerySchedule() {
+        return this.schedule;
     }
     
-    public void addKeyStorage(Map entry) {
-        this.keyStorage.putAll(entry);
+    public void addKeyStorage(Map<Integer, ?> entry) {
+        for (Integer key : entry.keySet()) {
+            this.keyStorage.add(key.intValue());
+        }
     }
 
-    public void notifyOriginator(SMessage mes, int pid) {
-        Node originator = mes.originator;
-        SearchProtocol sp = (SearchProtocol) originator.getProtocol(pid);
-        sp.hitTable.add(mes);
+    public void addKey(int key) {
+        this.keyStorage.add(key);
     }
 
-    public int[] pickQueryData() {
-        int[] result = null;
-
-        int currentTime = CommonState.getIntTime();
+    /** The key storage, so that ResourceInitializer can fill it */
+    public ResourceStore getResourceStore() {
+        return this.keyStorage;
+    }
 
-        Integer cycle = Integer.valueOf(currentTime);
+    private static ResourceStore createKeyStorage(String prefix) {
+        String backend = Configuration.getString(prefix + "." + PAR_KEYSTORE, "sorted");
+        int universe = Configuration.getInt(prefix + "." + PAR_KEYSTORE_UNIVERSE, 64);
 
-        if (this.queryDistro.containsKey(cycle)) {
-            result = (int[]) this.queryDistro.get(cycle);
+        if (backend.equals("sorted")) {
+            return new SortedResourceStore(16);
+        } else if (backend.equals("bitset")) {
+            return new BitsetResourceStore(universe);
+        } else if (backend.equals("hash")) {
+            return new HashResourceStore(16);
         }
+        throw new IllegalParameterException(prefix + "." + PAR_KEYSTORE,
+            "Unknown key storage " + backend + ", must be sorted, bitset or hash");
+    }
 
-        return result;
+    public void notifyOriginator(SMessage mes, int pid) {
+        Node originator = mes.originator;
+        SearchProtocol sp = (SearchProtocol) originator.getProtocol(pid);
+        sp.hitTable.add(mes.seq);
+    }
+
+    /**
+     * First schedule entry of the queries node produces in the current
+     * cycle, -1 if none; iterate with schedule.next(e) and read each with
+     * schedule.getPayload(e). O(1), no per-node lookup structure.
+     */
+    public int firstQuery(Node node) {
+        if (this.schedule == null) { return -1; }
+        return this.schedule.first(CommonState.getIntTime(), node.getIndex());
     }
 
     public int degree() {
@@ -146,41 +243,32 @@ public abstract class SearchProtocol implements CDProtocol, Linkable {
     public void onKill() {
         this.messageTable.clear();
         this.hitTable.clear();
-        this.incomingQueue.clear();
+        this.sent = 0;
+        Arrays.fill(this.pending, null);
+        Arrays.fill(this.arriving, null);
+        this.pendingCount = 0;
+        this.arrivingCount = 0;
         this.view.clear();
         this.keyStorage.clear();
-        this.queryDistro.clear();
     }
 
-    protected int[] matches(int[] keys) {
-        int[] result = null;
-
-        ArrayList<Integer> temp = new ArrayList<>();
-
-        for (int i = 0; i < keys.length; i++) {
-            if (this.keyStorage.containsKey(Integer.valueOf(keys[i]))) {
-                temp.add(Integer.valueOf(keys[i]));
-            }
+    /**
+     * Keys of query held by this node, sorted, or null if none. With
+     * andMatch, all of the query's keys or null.
+     */
+    protected int[] matches(QueryPayload query) {
+        if (this.andMatch) {
+            return (query.allIn(this.keyStorage) ? query.toArray() : null);
         }
-
-        if (temp.size() > 0) {
-            result = new int[temp.size()];
-            for (int i = 0; i < temp.size(); i++) {
-                result[i] = ((Integer) temp.get(i)).intValue();
-            }
-        }
-
-        return result;
+        return query.commonWith(this.keyStorage);
     }
 
-    protected boolean match(int keys[]) {
-        int[] result = this.matches(keys);
-
-        if (result != null) {
-            return true;
-        }
-
-        return false;
+    /**
+     * Whether this node matches query: holds any of its keys, or all of
+     * them with andMatch. Stops at the first deciding key.
+     */
+    protected boolean match(QueryPayload query) {
+        return (this.andMatch ? query.allIn(this.keyStorage) : query.anyIn(this.keyStorage));
     }
 
     
@@ -191,12 +279,12 @@ public abstract class SearchProtocol implements CDProtocol, Linkable {
         try { copy=(SearchProtocol)super.clone(); }
         catch( CloneNotSupportedException e ) {} // never happens
 
-        copy.messageTable = (Hashtable<Object, Integer>) this.messageTable.clone();
-        copy.hitTable = (HashSet<Object>) this.hitTable.clone();
-        copy.incomingQueue = (ArrayList<Object>) this.incomingQueue.clone();
+        copy.messageTable = this.messageTable.clone();
+        copy.hitTable = this.hitTable.clone();
+        copy.pending = this.pending.clone();
+        copy.arriving = this.arriving.clone();
         copy.view = (ArrayList<Node>) this.view.clone();
-        copy.keyStorage = (HashMap<Integer, Integer>) this.keyStorage.clone();
-        copy.queryDistro = (HashMap<Integer, Object>) this.queryDistro.clone();
+        copy.keyStorage = this.keyStorage.clone();
 
         return copy;
     }
@@ -100,6 +100,7 @@ public FullNextCycle(String prefix) {
 public boolean execute() {
 
 	final int cycle=CDState.getCycle();
+	if (Metrics.ENABLED) Metrics.CD_CYCLES.inc();
 	if( shuffle ) rperm.reset( Network.size() );
 	for(int j=0; j<Network.size(); ++j)
 	{
@@ -111,6 +112,7 @@ public boolean execute() {
 		else
 			node = Network.get(j);
 		if( !node.isUp() ) continue; 
+		if (Metrics.ENABLED) Metrics.CD_NODES.inc();
 		CDState.setNode(node);
 		CDState.setCycleT(j);
 		final int len = node.protocolSize();
@@ -125,7 +127,10 @@ public boolean execute() {
 			Protocol protocol = node.getProtocol(k);
 			if( protocol instanceof CDProtocol )
 			{
+				final long start = (Metrics.TIMING ? System.nanoTime() : 0);
 				((CDProtocol)protocol).nextCycle(node, k);
+				if (Metrics.ENABLED) Metrics.protocolCall(k,
+					Metrics.TIMING ? System.nanoTime() - start : 0);
 				if( !node.isUp() ) break;
 			}
 		}
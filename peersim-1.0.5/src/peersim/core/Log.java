@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.core;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+
+/**
+* Leveled, rate-limited logger for simulation components. Each component
+* gets its own instance through {@link #get}, with the level configured
+* for its prefix, and guards its calls with {@link #isDebug} and the like,
+* so that a disabled message costs one int comparison and no string
+* building:
+* <pre>
+* if (log.isDebug()) log.debug("got " + msg);
+* </pre>
+* Lines are formatted on the calling thread and written by a single
+* background thread through a bounded queue; the simulation blocks only
+* when the queue is full. Lines beyond the configured rate are dropped and
+* the number of dropped lines is reported with the next line that passes.
+* Pending lines are written when the JVM exits, or on {@link #flush}.
+*/
+public class Log {
+
+
+// ======================= parameters ================================
+// ===================================================================
+
+/**
+* Level of a component, appended to its prefix: one of off, error, warn,
+* info, debug or trace. Defaults to the level set by {@value #PAR_LEVEL}.
+* @config
+*/
+public static final String PAR_LOG = "log";
+
+/**
+* Default level of all components. Defaults to info.
+* @config
+*/
+public static final String PAR_LEVEL = "log.level";
+
+/**
+* Max lines per second each component writes, 0 for no limit. Defaults
+* to 0.
+* @config
+*/
+public static final String PAR_RATE = "log.rate";
+
+/**
+* File the lines go to. Defaults to standard output.
+* @config
+*/
+public static final String PAR_FILE = "log.file";
+
+/**
+* Capacity of the queue in front of the writer thread, in lines.
+* Defaults to 8192.
+* @config
+*/
+public static final String PAR_BUFFER = "log.buffer";
+
+
+// ======================= levels ====================================
+// ===================================================================
+
+public static final int OFF = 0;
+public static final int ERROR = 1;
+public static final int WARN = 2;
+public static final int INFO = 3;
+public static final int DEBUG = 4;
+public static final int TRACE = 5;
+
+private static final String[] NAMES =
+	{"OFF", "ERROR", "WARN", "INFO", "DEBUG", "TRACE"};
+
+
+// ======================= fields ====================================
+// ===================================================================
+
+/** Component name, printed with each line */
+private final String name;
+
+/** Highest level written */
+private final int level;
+
+/** Max lines per second, 0 for no limit */
+private final double rate;
+
+/** Token bucket of the rate limit: lines allowed now, and when it was refilled */
+private double tokens;
+private long refilled;
+
+/** Lines dropped by the rate limit since the last written one */
+private long dropped = 0;
+
+/** Shared writer, created with the first line */
+private static Writer writer = null;
+
+
+// ======================= initialization ============================
+// ===================================================================
+
+
+/**
+* Returns the logger of the component configured with prefix, at the
+* level given by prefix.{@value #PAR_LOG}.
+*/
+public static Log get(String prefix) {
+
+	String def = Configuration.getString(PAR_LEVEL, "info");
+	String lvl = Configuration.getString(prefix + "." + PAR_LOG, def);
+	return new Log(prefix, parseLevel(prefix + "." + PAR_LOG, lvl),
+		Configuration.getDouble(PAR_RATE, 0));
+}
+
+// -------------------------------------------------------------------
+
+/** Creates a logger writing the lines up to level, at most rate per second. */
+public Log(String name, int level, double rate) {
+
+	this.name = name;
+	this.level = level;
+	this.rate = rate;
+	tokens = Math.max(rate, 1);
+	refilled = System.nanoTime();
+}
+
+// -------------------------------------------------------------------
+
+private static int parseLevel(String par, String lvl) {
+
+	String upper = lvl.trim().toUpperCase(Locale.ROOT);
+	for (int i = 0; i < NAMES.length; ++i)
+		if (NAMES[i].equals(upper)) return i;
+	throw new IllegalParameterException(par,
+		"Unknown log level " + lvl + ", must be off, error, warn, info, debug or trace");
+}
+
+
+// ======================= guards ====================================
+// ===================================================================
+
+
+/** Returns true if lines of the given level are written. */
+public boolean isEnabled(int lvl) { return lvl <= level; }
+
+public boolean isError() { return ERROR <= level; }
+
+public boolean isWarn() { return WARN <= level; }
+
+public boolean isInfo() { return INFO <= level; }
+
+public boolean isDebug() { return DEBUG <= level; }
+
+public boolean isTrace() { return TRACE <= level; }
+
+
+// ======================= logging ===================================
+// ===================================================================
+
+
+public void error(String msg) { log(ERROR, msg); }
+
+public void warn(String msg) { log(WARN, msg); }
+
+public void info(String msg) { log(INFO, msg); }
+
+public void debug(String msg) { log(DEBUG, msg); }
+
+public void trace(String msg) { log(TRACE, msg); }
+
+// -------------------------------------------------------------------
+
+/**
+* Writes msg at the given level, if the level is enabled and the rate
+* limit allows it. The line carries the simulation time.
+*/
+public void log(int lvl, String msg) {
+
+	if (lvl > level || lvl <= OFF) return;
+
+	if (rate > 0) {
+		long now = System.nanoTime();
+		// Bucket holds a second's worth of lines, at least one
+		tokens = Math.min(Math.max(rate, 1), tokens + (now - refilled) * rate / 1e9);
+		refilled = now;
+		if (tokens < 1) {
+			dropped++;
+			return;
+		}
+		tokens--;
+	}
+
+	String line = CommonState.getTime() + " " + NAMES[lvl] + " " + name + ": " + msg;
+	if (dropped > 0) {
+		line = line + " (" + dropped + " lines dropped)";
+		dropped = 0;
+	}
+	writer().put(line);
+}
+
+// -------------------------------------------------------------------
+
+/** Blocks until all lines logged so far are written. */
+public static void flush() {
+
+	Writer w;
+	synchronized (Log.class) { w = writer; }
+	if (w != null) w.flush();
+}
+
+// -------------------------------------------------------------------
+
+private static synchronized Writer writer() {
+
+	if (writer == null) {
+		PrintStream out = System.out;
+		if (Configuration.contains(PAR_FILE)) {
+			String fname = Configuration.getString(PAR_FILE);
+			try { out = new PrintStream(new FileOutputStream(fname), false); }
+			catch (IOException e) {
+				throw new IllegalParameterException(PAR_FILE,
+					"Cannot open " + fname + ": " + e.getMessage());
+			}
+		}
+		writer = new Writer(out, Configuration.getInt(PAR_BUFFER, 8192));
+	}
+	return writer;
+}
+
+
+// ======================= writer thread =============================
+// ===================================================================
+
+
+/**
+* Background thread writing the queued lines in batches. A flush request
+* is an Object put in the queue; the thread notifies it once everything
+* before it is written.
+*/
+private static class Writer implements Runnable {
+
+	private final BlockingQueue<Object> queue;
+	private final PrintStream out;
+
+	Writer(PrintStream out, int capacity) {
+
+		this.out = out;
+		queue = new ArrayBlockingQueue<Object>(Math.max(capacity, 1));
+		Thread t = new Thread(this, "peersim-log");
+		t.setDaemon(true); // must not keep the JVM alive
+		t.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+	}
+
+	void put(Object o) {
+
+		try { queue.put(o); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+
+	void flush() {
+
+		Object done = new Object();
+		synchronized (done) {
+			put(done);
+			try { done.wait(); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+	}
+
+	public void run() {
+
+		ArrayList<Object> batch = new ArrayList<Object>();
+		while (true) {
+			try { batch.add(queue.take()); }
+			catch (InterruptedException e) { return; }
+			queue.drainTo(batch);
+
+			for (Object o : batch) {
+				if (o instanceof String) {
+					out.println((String) o);
+				} else {
+					out.flush();
+					synchronized (o) { o.notifyAll(); }
+				}
+			}
+			batch.clear();
+			if (queue.isEmpty()) out.flush();
+		}
+	}
+}
+
+}
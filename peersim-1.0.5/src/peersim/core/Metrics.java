@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import peersim.config.Configuration;
+
+/**
+* Registry of named counters and histograms, plus per protocol counts of
+* the events (event-driven) and nextCycle calls (cycle-driven) each
+* protocol handled. The simulation engines and transports record into the
+* static instruments below; protocols can create their own with
+* {@link #counter} and {@link #histogram}. {@link peersim.reports.MetricsObserver}
+* dumps snapshots.
+* <p>
+* Recording is a field increment or a few shifts, without allocation or
+* synchronization: simulations run on one thread, so there is no need for
+* the striping of a concurrent adder. Everything can be switched off with
+* {@value #PAR_ENABLED}, and timing of protocol code is off unless
+* {@value #PAR_TIMING} is set, as it costs two clock reads per call.
+*/
+public class Metrics {
+
+
+// ======================= parameters ================================
+// ===================================================================
+
+/**
+* If false, the engines and transports record nothing. Defaults to true.
+* @config
+*/
+public static final String PAR_ENABLED = "metrics.enabled";
+
+/**
+* If set, the time spent in each protocol's processEvent and nextCycle is
+* measured too.
+* @config
+*/
+public static final String PAR_TIMING = "metrics.timing";
+
+/** Whether the engines and transports record */
+public static final boolean ENABLED =
+	Configuration.getBoolean(PAR_ENABLED, true);
+
+/** Whether protocol time is measured */
+public static final boolean TIMING =
+	ENABLED && Configuration.contains(PAR_TIMING);
+
+
+// ======================= registry ==================================
+// ===================================================================
+
+private static final LinkedHashMap<String,Counter> counters =
+	new LinkedHashMap<String,Counter>();
+
+private static final LinkedHashMap<String,Histogram> histograms =
+	new LinkedHashMap<String,Histogram>();
+
+/** Events or nextCycle calls handled per pid */
+private static long[] pidCalls = new long[0];
+
+/** Nanoseconds spent per pid, if {@link #TIMING} */
+private static long[] pidNanos = new long[0];
+
+
+// ======================= engine instruments ========================
+// ===================================================================
+
+/** Protocol events executed by the event-driven engine */
+public static final Counter ED_EVENTS = counter("ed.events");
+
+/** Control events executed by the event-driven engine */
+public static final Counter ED_CONTROLS = counter("ed.controls");
+
+/** Event queue size, sampled at every event */
+public static final Histogram ED_QUEUE = histogram("ed.queue");
+
+/** Cycles run by the cycle-driven engine */
+public static final Counter CD_CYCLES = counter("cd.cycles");
+
+/** Nodes visited by the cycle-driven engine */
+public static final Counter CD_NODES = counter("cd.nodes");
+
+/** Messages handed to a transport */
+public static final Counter TRANSPORT_SENT = counter("transport.sent");
+
+/** Messages dropped by an unreliable transport */
+public static final Counter TRANSPORT_DROPPED = counter("transport.dropped");
+
+/** Delay given to each delivered message */
+public static final Histogram TRANSPORT_DELAY = histogram("transport.delay");
+
+
+// ======================= methods ===================================
+// ===================================================================
+
+
+/** To avoid construction */
+private Metrics() {}
+
+// -------------------------------------------------------------------
+
+/** Returns the counter with the given name, creating it if needed. */
+public static Counter counter(String name) {
+
+	Counter c = counters.get(name);
+	if (c == null) {
+		c = new Counter(name);
+		counters.put(name, c);
+	}
+	return c;
+}
+
+// -------------------------------------------------------------------
+
+/** Returns the histogram with the given name, creating it if needed. */
+public static Histogram histogram(String name) {
+
+	Histogram h = histograms.get(name);
+	if (h == null) {
+		h = new Histogram(name);
+		histograms.put(name, h);
+	}
+	return h;
+}
+
+// -------------------------------------------------------------------
+
+/** All counters, in creation order. */
+public static Collection<Counter> getCounters() {
+	return Collections.unmodifiableCollection(counters.values());
+}
+
+// -------------------------------------------------------------------
+
+/** All histograms, in creation order. */
+public static Collection<Histogram> getHistograms() {
+	return Collections.unmodifiableCollection(histograms.values());
+}
+
+// -------------------------------------------------------------------
+
+/**
+* Records a call of protocol pid, that took nanos if {@link #TIMING}
+* (pass 0 otherwise).
+*/
+public static void protocolCall(int pid, long nanos) {
+
+	if (pid >= pidCalls.length) {
+		pidCalls = Arrays.copyOf(pidCalls, pid + 1);
+		pidNanos = Arrays.copyOf(pidNanos, pid + 1);
+	}
+	pidCalls[pid]++;
+	pidNanos[pid] += nanos;
+}
+
+// -------------------------------------------------------------------
+
+/** Calls recorded for protocol pid. */
+public static long getProtocolCalls(int pid) {
+	return pid < pidCalls.length ? pidCalls[pid] : 0;
+}
+
+// -------------------------------------------------------------------
+
+/** Nanoseconds recorded for protocol pid, 0 unless {@link #TIMING}. */
+public static long getProtocolNanos(int pid) {
+	return pid < pidNanos.length ? pidNanos[pid] : 0;
+}
+
+// -------------------------------------------------------------------
+
+/** Resets all instruments, keeping them registered. */
+public static void reset() {
+
+	for (Counter c : counters.values()) c.reset();
+	for (Histogram h : histograms.values()) h.reset();
+	Arrays.fill(pidCalls, 0);
+	Arrays.fill(pidNanos, 0);
+}
+
+
+// ======================= instruments ===============================
+// ===================================================================
+
+
+/** A named count. */
+public static class Counter {
+
+	private final String name;
+	private long value = 0;
+
+	private Counter(String name) { this.name = name; }
+
+	public String getName() { return name; }
+
+	public void inc() { value++; }
+
+	public void add(long n) { value += n; }
+
+	public long get() { return value; }
+
+	public void reset() { value = 0; }
+}
+
+// -------------------------------------------------------------------
+
+/**
+* A histogram of non negative long values in logarithmic buckets, in the
+* style of HDR histograms: each power of two is split into
+* {@value #SUB_BUCKETS} linear sub-buckets, so values up to
+* {@value #SUB_BUCKETS} are exact and larger ones have a relative error
+* below 1/{@value #SUB_BUCKETS}. Recording is O(1), percentiles are
+* O(buckets). Negative values are recorded as 0.
+*/
+public static class Histogram {
+
+	private static final int SUB_BITS = 4;
+
+	/** Linear sub-buckets per power of two */
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final String name;
+	private final long[] buckets = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	private Histogram(String name) { this.name = name; }
+
+	public String getName() { return name; }
+
+	public void record(long value) {
+
+		if (value < 0) value = 0;
+		buckets[bucket(value)]++;
+		count++;
+		sum += value;
+		if (value < min) min = value;
+		if (value > max) max = value;
+	}
+
+	public long getCount() { return count; }
+
+	/** The smallest value recorded, 0 if none. */
+	public long getMin() { return count == 0 ? 0 : min; }
+
+	/** The largest value recorded, 0 if none. */
+	public long getMax() { return count == 0 ? 0 : max; }
+
+	/** The average of the values recorded, 0 if none. */
+	public double getMean() { return count == 0 ? 0 : (double) sum / count; }
+
+	/**
+	* The smallest value at or above fraction p (in [0, 1]) of the values
+	* recorded, within the bucket precision. 0 if none.
+	*/
+	public long getPercentile(double p) {
+
+		if (count == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(p * count));
+		long seen = 0;
+		for (int i = 0; i < buckets.length; ++i) {
+			seen += buckets[i];
+			if (seen >= rank)
+				return Math.min(Math.max(lowest(i), min), max);
+		}
+		return max;
+	}
+
+	public void reset() {
+
+		Arrays.fill(buckets, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+	}
+
+	/** Bucket of value, which is non negative. */
+	private static int bucket(long value) {
+
+		if (value < SUB_BUCKETS) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/** The smallest value of bucket i. */
+	private static long lowest(int i) {
+
+		if (i < SUB_BUCKETS) return i;
+		int shift = (i >>> SUB_BITS) - 1;
+		return (long) (SUB_BUCKETS + (i & (SUB_BUCKETS - 1))) << shift;
+	}
+}
+
+}
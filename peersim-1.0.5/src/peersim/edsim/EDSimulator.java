@@ -278,6 +278,7 @@ private static boolean executeNext() {
 	}
 	
 	CommonState.setTime(time);
+	if (Metrics.ENABLED) Metrics.ED_QUEUE.record(heap.size());
 	int pid = ev.pid;
 	if (ev.node == null)
 	{
@@ -290,12 +291,14 @@ private static boolean executeNext() {
 				"No destination specified (null) for event "+
 				ev);
 		}
+		if (Metrics.ENABLED) Metrics.ED_CONTROLS.inc();
 		return ctrl.execute();
 	}
 	else if (ev.node != Network.prototype && ev.node.isUp() )
 	{
 		CommonState.setPid(pid);
 		CommonState.setNode(ev.node);
+		final long start = (Metrics.TIMING ? System.nanoTime() : 0);
 		if( ev.event instanceof NextCycleEvent )
 		{
 			NextCycleEvent nce = (NextCycleEvent) ev.event;
@@ -314,6 +317,11 @@ private static boolean executeNext() {
 			}
 			prot.processEvent(ev.node, pid, ev.event);
 		}
+		if (Metrics.ENABLED) {
+			Metrics.ED_EVENTS.inc();
+			Metrics.protocolCall(pid,
+				Metrics.TIMING ? System.nanoTime() - start : 0);
+		}
 	}
 	
 	return false;
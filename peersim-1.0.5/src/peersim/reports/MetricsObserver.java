@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.reports;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Locale;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.*;
+
+/**
+ * Dumps a snapshot of the {@link Metrics} registry every time it runs:
+ * all counters with their rate per wall-clock second since the previous
+ * snapshot (e.g. events/s), all histograms (e.g. event queue depth) and,
+ * per protocol, the events or nextCycle calls it handled, their rate and,
+ * with metrics.timing, the time spent in it. Schedule it like the
+ * simulation log, e.g.
+ * <pre>
+ * control.metrics peersim.reports.MetricsObserver
+ * control.metrics.step simulation.logtime
+ * control.metrics.FINAL
+ * </pre>
+ * As CSV, one row per value: time,wall_ms,metric,field,value. As JSON,
+ * one object per snapshot and line.
+ */
+public class MetricsObserver implements Control
+{
+
+// ===================== fields =======================================
+// ====================================================================
+
+/**
+ * Output format, csv or json. Defaults to csv.
+ * @config
+ */
+private static final String PAR_FORMAT = "format";
+
+/**
+ * File to write to. Defaults to standard output.
+ * @config
+ */
+private static final String PAR_FILE = "file";
+
+/** Percentiles reported for histograms */
+private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99"};
+
+private final String prefix;
+
+private final boolean json;
+
+private final PrintStream out;
+
+/** Protocol names by pid */
+private final String[] protocols;
+
+/** Values at the previous snapshot, for the rates */
+private final HashMap<String,Long> lastCounts = new HashMap<String,Long>();
+private final long[] lastCalls;
+private long lastWall;
+
+private final long startWall;
+
+private boolean headerDone = false;
+
+
+// ===================== initialization ===============================
+// ====================================================================
+
+
+public MetricsObserver(String prefix)
+{
+	this.prefix = prefix;
+
+	String format = Configuration.getString(prefix + "." + PAR_FORMAT, "csv");
+	if (format.equals("json")) json = true;
+	else if (format.equals("csv")) json = false;
+	else throw new IllegalParameterException(prefix + "." + PAR_FORMAT,
+		"Unknown format " + format + ", must be csv or json");
+
+	if (Configuration.contains(prefix + "." + PAR_FILE)) {
+		String fname = Configuration.getString(prefix + "." + PAR_FILE);
+		try { out = new PrintStream(new FileOutputStream(fname), true); }
+		catch (IOException e) {
+			throw new IllegalParameterException(prefix + "." + PAR_FILE,
+				"Cannot open " + fname + ": " + e.getMessage());
+		}
+	}
+	else out = System.out;
+
+	protocols = new String[Configuration.getNames(Node.PAR_PROT).length];
+	for (int pid = 0; pid < protocols.length; ++pid)
+		protocols[pid] = Configuration.lookupPid(pid);
+	lastCalls = new long[protocols.length];
+
+	startWall = lastWall = System.nanoTime();
+}
+
+
+// ===================== methods ======================================
+// ====================================================================
+
+
+public boolean execute()
+{
+	long now = System.nanoTime();
+	double seconds = Math.max(now - lastWall, 1) / 1e9;
+	lastWall = now;
+
+	Snapshot s = json ? new JsonSnapshot() : new CsvSnapshot();
+
+	s.begin(CommonState.getTime(), (now - startWall) / 1000000);
+
+	for (Metrics.Counter c : Metrics.getCounters()) {
+		Long last = lastCounts.put(c.getName(), c.get());
+		long delta = c.get() - (last == null ? 0 : last);
+		s.counter(c.getName(), c.get(), delta / seconds);
+	}
+
+	for (Metrics.Histogram h : Metrics.getHistograms()) {
+		long[] ps = new long[PERCENTILES.length];
+		for (int i = 0; i < ps.length; ++i)
+			ps[i] = h.getPercentile(PERCENTILES[i]);
+		s.histogram(h.getName(), h.getCount(), h.getMean(), ps, h.getMax());
+	}
+
+	for (int pid = 0; pid < protocols.length; ++pid) {
+		long calls = Metrics.getProtocolCalls(pid);
+		long delta = calls - lastCalls[pid];
+		lastCalls[pid] = calls;
+		s.protocol(protocols[pid], calls, delta / seconds,
+			Metrics.TIMING ? Metrics.getProtocolNanos(pid) : -1);
+	}
+
+	s.end();
+	return false;
+}
+
+
+// ===================== formats ======================================
+// ====================================================================
+
+
+/** Writes one snapshot, value by value. */
+private abstract class Snapshot
+{
+	abstract void begin(long time, long wallMs);
+	abstract void counter(String name, long count, double rate);
+	abstract void histogram(String name, long count, double mean,
+		long[] percentiles, long max);
+	/** nanos is -1 when not measured */
+	abstract void protocol(String name, long calls, double rate, long nanos);
+	abstract void end();
+}
+
+// --------------------------------------------------------------------
+
+private class CsvSnapshot extends Snapshot
+{
+	private String row;
+
+	void begin(long time, long wallMs) {
+		if (!headerDone) {
+			out.println("time,wall_ms,metric,field,value");
+			headerDone = true;
+		}
+		row = time + "," + wallMs + ",";
+	}
+
+	private void value(String metric, String field, String value) {
+		out.println(row + metric + "," + field + "," + value);
+	}
+
+	void counter(String name, long count, double rate) {
+		value(name, "count", "" + count);
+		value(name, "rate", fmt(rate));
+	}
+
+	void histogram(String name, long count, double mean,
+		long[] percentiles, long max) {
+		value(name, "count", "" + count);
+		value(name, "mean", fmt(mean));
+		for (int i = 0; i < percentiles.length; ++i)
+			value(name, PERCENTILE_NAMES[i], "" + percentiles[i]);
+		value(name, "max", "" + max);
+	}
+
+	void protocol(String name, long calls, double rate, long nanos) {
+		String metric = "protocol." + name;
+		value(metric, "calls", "" + calls);
+		value(metric, "rate", fmt(rate));
+		if (nanos >= 0) value(metric, "nanos", "" + nanos);
+	}
+
+	void end() { out.flush(); }
+}
+
+// --------------------------------------------------------------------
+
+private class JsonSnapshot extends Snapshot
+{
+	private final StringBuilder counters = new StringBuilder();
+	private final StringBuilder histograms = new StringBuilder();
+	private final StringBuilder protos = new StringBuilder();
+	private String head;
+
+	void begin(long time, long wallMs) {
+		head = "{\"name\":\"" + prefix + "\",\"time\":" + time +
+			",\"wall_ms\":" + wallMs;
+	}
+
+	void counter(String name, long count, double rate) {
+		sep(counters).append('"').append(name).append("\":{\"count\":")
+			.append(count).append(",\"rate\":").append(fmt(rate)).append('}');
+	}
+
+	void histogram(String name, long count, double mean,
+		long[] percentiles, long max) {
+		sep(histograms).append('"').append(name).append("\":{\"count\":")
+			.append(count).append(",\"mean\":").append(fmt(mean));
+		for (int i = 0; i < percentiles.length; ++i)
+			histograms.append(",\"").append(PERCENTILE_NAMES[i])
+				.append("\":").append(percentiles[i]);
+		histograms.append(",\"max\":").append(max).append('}');
+	}
+
+	void protocol(String name, long calls, double rate, long nanos) {
+		sep(protos).append('"').append(name).append("\":{\"calls\":")
+			.append(calls).append(",\"rate\":").append(fmt(rate));
+		if (nanos >= 0) protos.append(",\"nanos\":").append(nanos);
+		protos.append('}');
+	}
+
+	void end() {
+		out.println(head + ",\"counters\":{" + counters +
+			"},\"histograms\":{" + histograms +
+			"},\"protocols\":{" + protos + "}}");
+	}
+
+	private StringBuilder sep(StringBuilder sb) {
+		if (sb.length() > 0) sb.append(',');
+		return sb;
+	}
+}
+
+// --------------------------------------------------------------------
+
+private static String fmt(double d)
+{
+	return String.format(Locale.ROOT, "%.1f", d);
+}
+
+}
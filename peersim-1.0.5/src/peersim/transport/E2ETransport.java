@@ -108,6 +108,10 @@ public void send(Node src, Node dest, Object msg, int pid)
 	E2ETransport receiver = (E2ETransport) dest.getProtocol(tid);
 	long latency =
 	   E2ENetwork.getLatency(sender.router, receiver.router) + local*2;
+	if (Metrics.ENABLED) {
+		Metrics.TRANSPORT_SENT.inc();
+		Metrics.TRANSPORT_DELAY.record(latency);
+	}
 	EDSimulator.add(latency, msg, dest, pid);
 }
 
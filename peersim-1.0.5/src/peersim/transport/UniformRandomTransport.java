@@ -106,6 +106,10 @@ public void send(Node src, Node dest, Object msg, int pid)
 {
 	// avoid calling nextLong if possible
 	long delay = (range==1?min:min + CommonState.r.nextLong(range));
+	if (Metrics.ENABLED) {
+		Metrics.TRANSPORT_SENT.inc();
+		Metrics.TRANSPORT_DELAY.record(delay);
+	}
 	EDSimulator.add(delay, msg, dest, pid);
 }
 
@@ -110,6 +110,7 @@ public void send(Node src, Node dest, Object msg, int pid)
 			Transport t = (Transport) src.getProtocol(transport);
 			t.send(src, dest, msg, pid);
 		}
+		else if (Metrics.ENABLED) Metrics.TRANSPORT_DROPPED.inc();
 	}
 	catch(ClassCastException e)
 	{
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+		
+package peersim.util;
+
+import java.util.Random;
+
+/**
+* Samples indexes from a fixed discrete probability distribution in
+* constant time, using Vose's alias method. Building the table takes
+* linear time in the number of indexes.
+* Useful for sampling with replacement, e.g. drawing query contents
+* from a popularity distribution.
+* @see WeightedRandPerm for sampling without replacement
+*/
+public class AliasTable {
+
+
+// ======================= private fields ============================
+// ===================================================================
+
+/** Probability of keeping the column instead of taking its alias */
+private final double[] prob;
+
+/** Alias of each column */
+private final int[] alias;
+
+
+// ======================= initialization ============================
+// ===================================================================
+
+
+/**
+* Builds the table for the distribution defined by the (normalized)
+* weights. Weights must be non-negative and at least one must be positive.
+*/
+public AliasTable( double[] weights ) {
+
+	final int n = weights.length;
+	if( n == 0 )
+		throw new IllegalArgumentException("No weights given");
+	
+	double sum = 0.0;
+	for(int i=0; i<n; ++i)
+	{
+		if( weights[i] < 0 )
+			throw new IllegalArgumentException(
+				"Negative weight at index "+i);
+		sum += weights[i];
+	}
+	if( sum <= 0 )
+		throw new IllegalArgumentException("All weights are zero");
+
+	prob = new double[n];
+	alias = new int[n];
+
+	// scaled probabilities, mean 1; split into small (<1) and large
+	double[] p = new double[n];
+	int[] small = new int[n];
+	int[] large = new int[n];
+	int ns = 0, nl = 0;
+	for(int i=0; i<n; ++i)
+	{
+		p[i] = weights[i]*n/sum;
+		if( p[i] < 1.0 ) small[ns++] = i;
+		else large[nl++] = i;
+	}
+
+	// pair each small column with a large one that fills it up
+	while( ns > 0 && nl > 0 )
+	{
+		int s = small[--ns];
+		int l = large[--nl];
+		prob[s] = p[s];
+		alias[s] = l;
+		p[l] = (p[l]+p[s])-1.0;
+		if( p[l] < 1.0 ) small[ns++] = l;
+		else large[nl++] = l;
+	}
+
+	// leftovers are 1 up to rounding
+	while( nl > 0 ) { int l = large[--nl]; prob[l] = 1.0; alias[l] = l; }
+	while( ns > 0 ) { int s = small[--ns]; prob[s] = 1.0; alias[s] = s; }
+}
+
+// -------------------------------------------------------------------
+
+/**
+* Builds the table for a Zipf distribution over n ranks: index i (rank
+* i+1) has weight 1/(i+1)^exponent. Index 0 is the most popular.
+*/
+public static AliasTable zipf( int n, double exponent ) {
+	
+	return new AliasTable(zipfWeights(n, exponent));
+}
+
+// -------------------------------------------------------------------
+
+/**
+* Weights of a Zipf distribution over n ranks, see {@link #zipf}.
+*/
+public static double[] zipfWeights( int n, double exponent ) {
+	
+	double[] w = new double[n];
+	for(int i=0; i<n; ++i) w[i] = 1.0/Math.pow(i+1, exponent);
+	return w;
+}
+
+
+// ======================= methods ===================================
+// ===================================================================
+
+
+/** Number of indexes the table samples from */
+public int size() { return prob.length; }
+
+// -------------------------------------------------------------------
+
+/** Draws an index according to the distribution, in constant time */
+public int next( Random r ) {
+	
+	int column = r.nextInt(prob.length);
+	return r.nextDouble() < prob[column] ? column : alias[column];
+}
+
+}
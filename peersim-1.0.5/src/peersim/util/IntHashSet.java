@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+		
+package peersim.util;
+
+import java.util.Arrays;
+
+/**
+* A set of ints, with open addressing and linear probing over a primitive
+* array. No boxing, and no allocation except when the table grows.
+* Elements can only be removed all at once with {@link #clear}. The value
+* {@link IntIntHashMap#NO_KEY} can't be stored.
+*/
+public class IntHashSet implements Cloneable {
+
+
+// ======================= fields ====================================
+// ===================================================================
+
+/** Default initial capacity */
+private static final int DEFAULT_CAPACITY = 16;
+
+/** Elements, {@link IntIntHashMap#NO_KEY} for free slots. Length is a
+* power of two. */
+private int[] keys;
+
+/** Number of elements */
+private int size;
+
+
+// ======================= initialization ============================
+// ===================================================================
+
+
+/** Creates an empty set with the default capacity. */
+public IntHashSet() { this(DEFAULT_CAPACITY); }
+
+// -------------------------------------------------------------------
+
+/** Creates an empty set that holds capacity elements without growing. */
+public IntHashSet( int capacity ) {
+
+	keys = new int[Integer.highestOneBit(Math.max(2*capacity-1, 2)) << 1];
+	Arrays.fill(keys, IntIntHashMap.NO_KEY);
+}
+
+
+// ======================= methods ===================================
+// ===================================================================
+
+
+/**
+* Adds key to the set.
+* @return true if key was not in the set already
+*/
+public boolean add( int key ) {
+
+	int i = find(key);
+	if( keys[i] == key ) return false;
+	if( 2*(size+1) > keys.length )
+	{
+		grow();
+		i = find(key);
+	}
+	keys[i] = key;
+	size++;
+	return true;
+}
+
+// -------------------------------------------------------------------
+
+/** Returns true if key is in the set. */
+public boolean contains( int key ) { return keys[find(key)] == key; }
+
+// -------------------------------------------------------------------
+
+/** Number of elements. */
+public int size() { return size; }
+
+// -------------------------------------------------------------------
+
+/** Removes all elements, keeping the capacity. */
+public void clear() {
+
+	Arrays.fill(keys, IntIntHashMap.NO_KEY);
+	size = 0;
+}
+
+// -------------------------------------------------------------------
+
+public IntHashSet clone() {
+
+	IntHashSet copy = null;
+	try { copy = (IntHashSet) super.clone(); }
+	catch( CloneNotSupportedException e ) {} // never happens
+	copy.keys = keys.clone();
+	return copy;
+}
+
+
+// ======================= private methods ===========================
+// ===================================================================
+
+
+/** Slot of key, or the free slot where it would go. */
+private int find( int key ) {
+
+	if( key == IntIntHashMap.NO_KEY )
+		throw new IllegalArgumentException("Key "+key+" is reserved");
+	final int mask = keys.length-1;
+	int i = IntIntHashMap.hash(key) & mask;
+	while( keys[i] != IntIntHashMap.NO_KEY && keys[i] != key )
+		i = (i+1) & mask;
+	return i;
+}
+
+// -------------------------------------------------------------------
+
+private void grow() {
+
+	int[] old = keys;
+	keys = new int[2*old.length];
+	Arrays.fill(keys, IntIntHashMap.NO_KEY);
+	for(int j=0; j<old.length; ++j)
+	{
+		if( old[j] != IntIntHashMap.NO_KEY ) keys[find(old[j])] = old[j];
+	}
+}
+
+}
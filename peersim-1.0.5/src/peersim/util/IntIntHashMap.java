@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+		
+package peersim.util;
+
+import java.util.Arrays;
+
+/**
+* A map from int keys to int values, with open addressing and linear
+* probing over primitive arrays. No boxing, and no allocation except when
+* the table grows. Entries can't be removed one by one, only all at once
+* with {@link #clear}. The key {@link #NO_KEY} can't be stored.
+* Useful for per-node message tables keyed by sequence numbers.
+*/
+public class IntIntHashMap implements Cloneable {
+
+
+// ======================= fields ====================================
+// ===================================================================
+
+/** Marks a free slot, can't be used as a key */
+public static final int NO_KEY = Integer.MIN_VALUE;
+
+/** Default initial capacity */
+private static final int DEFAULT_CAPACITY = 16;
+
+/** Keys, {@link #NO_KEY} for free slots. Length is a power of two. */
+private int[] keys;
+
+/** Values, parallel to keys */
+private int[] values;
+
+/** Number of entries */
+private int size;
+
+
+// ======================= initialization ============================
+// ===================================================================
+
+
+/** Creates an empty map with the default capacity. */
+public IntIntHashMap() { this(DEFAULT_CAPACITY); }
+
+// -------------------------------------------------------------------
+
+/** Creates an empty map that holds capacity entries without growing. */
+public IntIntHashMap( int capacity ) {
+
+	int n = Integer.highestOneBit(Math.max(2*capacity-1, 2)) << 1;
+	keys = new int[n];
+	values = new int[n];
+	Arrays.fill(keys, NO_KEY);
+}
+
+
+// ======================= methods ===================================
+// ===================================================================
+
+
+/** Returns the value of key, or def if key is absent. */
+public int get( int key, int def ) {
+
+	int i = find(key);
+	return keys[i] == key ? values[i] : def;
+}
+
+// -------------------------------------------------------------------
+
+/** Returns true if key is in the map. */
+public boolean containsKey( int key ) { return keys[find(key)] == key; }
+
+// -------------------------------------------------------------------
+
+/** Maps key to value, replacing any previous value. */
+public void put( int key, int value ) {
+
+	int i = insert(key);
+	values[i] = value;
+}
+
+// -------------------------------------------------------------------
+
+/**
+* Adds delta to the value of key, which is taken as 0 if absent.
+* @return the new value
+*/
+public int increment( int key, int delta ) {
+
+	int i = insert(key);
+	return values[i] += delta;
+}
+
+// -------------------------------------------------------------------
+
+/** Number of entries. */
+public int size() { return size; }
+
+// -------------------------------------------------------------------
+
+/** Removes all entries, keeping the capacity. */
+public void clear() {
+
+	Arrays.fill(keys, NO_KEY);
+	size = 0;
+}
+
+// -------------------------------------------------------------------
+
+public IntIntHashMap clone() {
+
+	IntIntHashMap copy = null;
+	try { copy = (IntIntHashMap) super.clone(); }
+	catch( CloneNotSupportedException e ) {} // never happens
+	copy.keys = keys.clone();
+	copy.values = values.clone();
+	return copy;
+}
+
+
+// ======================= private methods ===========================
+// ===================================================================
+
+
+/** Slot of key, or the free slot where it would go. */
+private int find( int key ) {
+
+	if( key == NO_KEY )
+		throw new IllegalArgumentException("Key "+key+" is reserved");
+	final int mask = keys.length-1;
+	int i = hash(key) & mask;
+	while( keys[i] != NO_KEY && keys[i] != key ) i = (i+1) & mask;
+	return i;
+}
+
+// -------------------------------------------------------------------
+
+/** Slot of key, adding it with value 0 if absent. */
+private int insert( int key ) {
+
+	int i = find(key);
+	if( keys[i] == key ) return i;
+	if( 2*(size+1) > keys.length )
+	{
+		grow();
+		i = find(key);
+	}
+	keys[i] = key;
+	values[i] = 0;
+	size++;
+	return i;
+}
+
+// -------------------------------------------------------------------
+
+private void grow() {
+
+	int[] oldKeys = keys;
+	int[] oldValues = values;
+	keys = new int[2*oldKeys.length];
+	values = new int[2*oldKeys.length];
+	Arrays.fill(keys, NO_KEY);
+	for(int j=0; j<oldKeys.length; ++j)
+	{
+		if( oldKeys[j] == NO_KEY ) continue;
+		int i = find(oldKeys[j]);
+		keys[i] = oldKeys[j];
+		values[i] = oldValues[j];
+	}
+}
+
+// -------------------------------------------------------------------
+
+/** Spreads sequential keys over the table. */
+static int hash( int key ) {
+
+	int h = key * 0x9E3779B9;
+	return h ^ (h >>> 16);
+}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+		
+package peersim.util;
+
+/**
+* Bounded set of recently seen int IDs (e.g. query or flood IDs), for
+* per-node duplicate suppression. Entries live in a ring in insertion
+* order, so the oldest entry is always at the head: it is dropped when the
+* ring is full or when its time window has passed. Each entry can have its
+* own window; an entry is then only dropped once the entries added before
+* it are gone, which keeps it longer, never shorter. A linear-probing
+* hash table of ring positions makes lookups O(1); removed entries are
+* unlinked by backward-shift deletion, so no tombstones build up. Nothing
+* is allocated after construction.
+*/
+public class SeenCache {
+
+
+// ======================= fields ====================================
+// ===================================================================
+
+/** Window of the entries added without one */
+private final long window;
+
+/** Ring of IDs and the times they expire */
+private final int[] ringId;
+private final long[] ringTime;
+
+/** Oldest entry */
+private int head = 0;
+
+/** Number of entries */
+private int count = 0;
+
+/** Ring position + 1 of each entry, 0 for empty slots */
+private final int[] index;
+private final int mask;
+
+/** Keeps the top bits of the hash */
+private final int shift;
+
+
+// ======================= initialization ============================
+// ===================================================================
+
+
+/**
+* Creates an empty cache holding at most capacity IDs, each for at most
+* window time units.
+*/
+public SeenCache( int capacity, long window ) {
+
+	if (capacity <= 0)
+		throw new IllegalArgumentException("capacity must be positive");
+	this.window = window;
+	ringId = new int[capacity];
+	ringTime = new long[capacity];
+
+	// Keep the load factor at most 1/2
+	int size = Integer.highestOneBit(capacity) << 2;
+	index = new int[size];
+	mask = size - 1;
+	shift = 32 - Integer.numberOfTrailingZeros(size);
+}
+
+
+// ======================= methods ===================================
+// ===================================================================
+
+
+/**
+* Records id as seen at time now, for the window given at construction.
+* @return false if id was already seen within its window
+*/
+public boolean add( int id, long now ) {
+	return add(id, now, window);
+}
+
+// -------------------------------------------------------------------
+
+/**
+* Records id as seen at time now, for the given window (e.g. until no copy
+* of a message can still be in flight).
+* @return false if id was already seen within its window
+*/
+public boolean add( int id, long now, long window ) {
+
+	evictExpired(now);
+	if (find(id) >= 0) return false;
+
+	if (count == ringId.length) removeHead();
+	int pos = (head + count) % ringId.length;
+	ringId[pos] = id;
+	ringTime[pos] = now + window;
+	count++;
+
+	int i = hash(id);
+	while (index[i] != 0) i = (i + 1) & mask;
+	index[i] = pos + 1;
+	return true;
+}
+
+// -------------------------------------------------------------------
+
+/** Returns true if id was seen within its window before now. */
+public boolean contains( int id, long now ) {
+
+	evictExpired(now);
+	return find(id) >= 0;
+}
+
+// -------------------------------------------------------------------
+
+/** Returns the number of entries currently held. */
+public int size() { return count; }
+
+// -------------------------------------------------------------------
+
+/** Returns an empty cache with the same capacity and default window. */
+public SeenCache copyEmpty() {
+	return new SeenCache(ringId.length, window);
+}
+
+// -------------------------------------------------------------------
+
+private void evictExpired( long now ) {
+
+	while (count > 0 && ringTime[head] < now) removeHead();
+}
+
+// -------------------------------------------------------------------
+
+/** Returns the index slot holding id, or -1. */
+private int find( int id ) {
+
+	for (int i = hash(id); index[i] != 0; i = (i + 1) & mask)
+		if (ringId[index[i] - 1] == id) return i;
+	return -1;
+}
+
+// -------------------------------------------------------------------
+
+private void removeHead() {
+
+	int slot = find(ringId[head]);
+	head = (head + 1) % ringId.length;
+	count--;
+
+	// Backward-shift deletion: move later entries of the probe run
+	// into the hole unless they already sit at or after their home
+	int hole = slot;
+	for (int i = (hole + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+		int home = hash(ringId[index[i] - 1]);
+		if (((i - home) & mask) >= ((i - hole) & mask)) {
+			index[hole] = index[i];
+			hole = i;
+		}
+	}
+	index[hole] = 0;
+}
+
+// -------------------------------------------------------------------
+
+private int hash( int id ) {
+	return (id * 0x9E3779B9) >>> shift;
+}
+
+}